@@ -0,0 +1,59 @@
+package cars;
+
+import base.Repository;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to load a generated catalog from a JSON file.
+ * The databind benchmark is the original whole-array binding; the others build a complete CarSetRepository
+ * through the streaming loader with the given storage engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LoadBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    @Param({"HEAP", "COLUMNAR", "MAPPED"})
+    private RepositoryConfig.Storage storage;
+
+    private Path json;
+
+    @Setup(Level.Trial)
+    public void writeCatalog() throws IOException {
+        json = Files.createTempFile("cars-" + size + "-", ".json");
+        try (OutputStream out = Files.newOutputStream(json)) {
+            new CarsSetGenerator(42).writeJson(size, out);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCatalog() throws IOException {
+        Files.deleteIfExists(json);
+    }
+
+    @Benchmark
+    public List<CarsSet> databind() throws IOException {
+        try (InputStream in = Files.newInputStream(json)) {
+            return Repository.MAPPER.readValue(in,
+                    Repository.MAPPER.getTypeFactory().constructCollectionType(ArrayList.class, CarsSet.class));
+        }
+    }
+
+    @Benchmark
+    public CarSetRepository repository() throws IOException {
+        return new CarSetRepository(Files.newInputStream(json), RepositoryConfig.builder().storage(storage).build());
+    }
+}
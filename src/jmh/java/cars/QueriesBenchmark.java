@@ -0,0 +1,73 @@
+package cars;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every {@link base.Queries} method of a CarSetRepository over a generated catalog,
+ * for each storage engine with and without secondary indexes.
+ * The batch benchmark computes all of them in one pass, to compare against the sum of the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class QueriesBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    @Param({"HEAP", "COLUMNAR", "MAPPED"})
+    private RepositoryConfig.Storage storage;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private CarSetRepository repo;
+
+    @Setup(Level.Trial)
+    public void createRepository() {
+        repo = new CarSetRepository(
+                new CarsSetGenerator(42).generate(size),
+                RepositoryConfig.builder().storage(storage).indexed(indexed).build());
+    }
+
+    @Benchmark
+    public long getHighestPrice() {
+        return repo.getHighestPrice();
+    }
+
+    @Benchmark
+    public Set<String> getCarsName() {
+        return repo.getCarsName();
+    }
+
+    @Benchmark
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        return repo.getCarsOrderByPriceDesc();
+    }
+
+    @Benchmark
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        return repo.getCountOfCarsByCarType();
+    }
+
+    @Benchmark
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        return repo.getCarsByCarTypes();
+    }
+
+    @Benchmark
+    public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+        return repo.getCarsByCarTypeAndCodes();
+    }
+
+    @Benchmark
+    public QueryBatch batch() {
+        return repo.batch();
+    }
+}
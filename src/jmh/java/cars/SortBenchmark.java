@@ -0,0 +1,60 @@
+package cars;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sorting a generated catalog with {@link CarsSet#COMPARATOR},
+ * both directly and through the natural ordering of CarsSet, against the same order through the normalized keys
+ * of {@link CarSorter#COMPARATOR_ORDER}, sequential and parallel.
+ * The copy benchmark shows the share of the list copy in the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SortBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    private List<CarsSet> cars;
+
+    @Setup(Level.Trial)
+    public void generateCars() {
+        cars = new CarsSetGenerator(42).generate(size);
+    }
+
+    @Benchmark
+    public List<CarsSet> copy() {
+        return new ArrayList<>(cars);
+    }
+
+    @Benchmark
+    public List<CarsSet> comparator() {
+        List<CarsSet> sorted = new ArrayList<>(cars);
+        sorted.sort(CarsSet.COMPARATOR);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<CarsSet> naturalOrder() {
+        List<CarsSet> sorted = new ArrayList<>(cars);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<CarsSet> normalizedKeys() {
+        return CarSorter.COMPARATOR_ORDER.sort(cars);
+    }
+
+    @Benchmark
+    public List<CarsSet> normalizedKeysParallel() {
+        return CarSorter.COMPARATOR_ORDER.parallelSort(cars);
+    }
+}
@@ -0,0 +1,51 @@
+package cars;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link SpecAnalytics} summaries over a generated catalog, on the scalar loops and on the Vector API.
+ * The vector kernels need the JVM to run with {@code --add-modules jdk.incubator.vector}, which the
+ * benchmarks profile passes on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SpecAnalyticsBenchmark {
+    @Param({"100000", "1000000"})
+    private int size;
+
+    @Param({"true", "false"})
+    private boolean vectorized;
+
+    private SpecAnalytics analytics;
+
+    @Setup(Level.Trial)
+    public void createTable() {
+        SpecKernels kernels = vectorized ? SpecKernels.select() : SpecKernels.Scalar.INSTANCE;
+        if (kernels.isVectorized() != vectorized) {
+            throw new IllegalStateException("The Vector API is not available; run with --add-modules jdk.incubator.vector");
+        }
+        SpecTable table = ColumnarCarStore.builder().addAll(new CarsSetGenerator(42).generate(size)).build().specTable();
+        analytics = new SpecAnalytics(table, kernels);
+    }
+
+    @Benchmark
+    public SpecAnalytics.SpecStats overall() {
+        return analytics.overall();
+    }
+
+    @Benchmark
+    public Map<CarsSet.CarType, SpecAnalytics.SpecStats> byCarType() {
+        return analytics.byCarType();
+    }
+
+    @Benchmark
+    public Map<String, SpecAnalytics.SpecStats> byManufacturer() {
+        return analytics.byManufacturer();
+    }
+}
@@ -0,0 +1,36 @@
+package base;
+
+/**
+ * An aggregate over the entities of a {@link Repository} that is kept up to date as entities change,
+ * instead of being recomputed for every query.
+ *
+ * <p>Once registered with {@link Repository#register(Aggregate)}, the aggregate is fed every entity of the
+ * repository and then every committed change, always from the single writer holding the repository's write lock.
+ * After each commit its {@link #value()} is published with the new snapshot, so readers get it in constant time.
+ *
+ * @param <CarsSet> the type of the entities
+ * @param <V> the type of the aggregated value
+ */
+public interface Aggregate<CarsSet, V> {
+
+    /**
+     * Accounts for an entity that entered the repository.
+     *
+     * @param entity the added entity
+     */
+    void add(CarsSet entity);
+
+    /**
+     * Accounts for an entity that left the repository.
+     *
+     * @param entity the removed entity
+     */
+    void remove(CarsSet entity);
+
+    /**
+     * Returns the current value of the aggregate.
+     *
+     * @return an immutable value that stays valid after later changes
+     */
+    V value();
+}
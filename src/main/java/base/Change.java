@@ -0,0 +1,50 @@
+package base;
+
+import lombok.Value;
+
+/**
+ * A single change applied to a {@link Repository}.
+ * An insert has no {@code before} value, a removal has no {@code after} value,
+ * and an update has both.
+ *
+ * @param <CarsSet> the type of the entities
+ */
+@Value
+public class Change<CarsSet> {
+    /**
+     * The entity before the change, or {@code null} for an insert.
+     */
+    CarsSet before;
+
+    /**
+     * The entity after the change, or {@code null} for a removal.
+     */
+    CarsSet after;
+
+    /**
+     * Tells whether this change added a new entity.
+     *
+     * @return true if there was no entity with the same key before the change
+     */
+    public boolean isInsert() {
+        return before == null;
+    }
+
+    /**
+     * Tells whether this change removed an entity.
+     *
+     * @return true if there is no entity with the same key after the change
+     */
+    public boolean isRemoval() {
+        return after == null;
+    }
+
+    /**
+     * Tells whether this change replaced an existing entity.
+     *
+     * @return true if the entity existed both before and after the change
+     */
+    public boolean isUpdate() {
+        return before != null && after != null;
+    }
+}
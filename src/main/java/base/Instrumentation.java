@@ -0,0 +1,226 @@
+package base;
+
+import lombok.NonNull;
+import lombok.Value;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Measures the load and the queries of a repository: latency histograms and allocated bytes per query,
+ * plus the size and duration of the last load.
+ * Every measured query is also emitted as a {@code base.Query} Flight Recorder event.
+ *
+ * <p>Queries are measured with a try-with-resources block around their body:
+ * <pre>{@code
+ * try (Instrumentation.Timer timer = instrumentation.start("getHighestPrice")) {
+ *     return ...;
+ * }
+ * }</pre>
+ * While measuring is off, {@link #start(String)} returns {@code null}, which try-with-resources skips,
+ * so the only cost left on the hot path is one volatile read.
+ * The timer is never referenced inside the block, so callers compiled with {@code -Xlint:try} suppress {@code "try"}.
+ *
+ * <p>The statistics can be read through {@link #getQueryStats()} or, once {@link #register(String) registered},
+ * through JMX.
+ */
+public final class Instrumentation implements InstrumentationMXBean {
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private final Map<String, Probe> probes = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+    private volatile LoadStats lastLoad = new LoadStats(0, 0, 0);
+
+    /**
+     * Creates an instrumentation.
+     *
+     * @param enabled whether queries are measured from the start
+     */
+    public Instrumentation(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts measuring one call of a query.
+     *
+     * @param query the name of the query
+     * @return the timer to close when the call returns, or {@code null} if measuring is off
+     */
+    public Timer start(@NonNull final String query) {
+        return enabled ? new Timer(probes.computeIfAbsent(query, Probe::new)) : null;
+    }
+
+    /**
+     * Records the outcome of a load.
+     *
+     * @param records the number of records loaded
+     * @param bytes the number of bytes read, or -1 if unknown
+     * @param nanos the duration of the load
+     */
+    public void recordLoad(final long records, final long bytes, final long nanos) {
+        lastLoad = new LoadStats(records, bytes, nanos);
+    }
+
+    @Override
+    public LoadStats getLastLoad() {
+        return lastLoad;
+    }
+
+    @Override
+    public Map<String, QueryStats> getQueryStats() {
+        Map<String, QueryStats> stats = new TreeMap<>();
+        probes.forEach((query, probe) -> stats.put(query, probe.stats()));
+        return stats;
+    }
+
+    @Override
+    public void reset() {
+        probes.clear();
+    }
+
+    /**
+     * Registers this instrumentation with the platform MBean server.
+     *
+     * @param name the value of the {@code name} key of the object name, such as the repository's purpose
+     * @return the object name, {@code base:type=Instrumentation,name=<name>}
+     * @throws JMException if the name is invalid or already registered
+     */
+    public ObjectName register(@NonNull final String name) throws JMException {
+        ObjectName objectName = ObjectName.getInstance("base:type=Instrumentation,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        // Only HotSpot-like JVMs count allocations per thread
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()
+                && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads;
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Measures one call of a query, from its creation until it is closed.
+     */
+    public static final class Timer implements AutoCloseable {
+        private final Probe probe;
+        private final QueryEvent event = new QueryEvent();
+        private final long allocatedAtStart;
+        private final long start;
+
+        private Timer(final Probe probe) {
+            this.probe = probe;
+            event.begin();
+            this.allocatedAtStart = allocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedAtStart < 0 ? -1 : allocatedBytes() - allocatedAtStart;
+            probe.latency.record(nanos);
+            if (allocated >= 0) {
+                probe.allocated.add(allocated);
+            }
+            if (event.shouldCommit()) {
+                event.query = probe.query;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The counters of one query.
+     */
+    private static final class Probe {
+        private final String query;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder allocated = new LongAdder();
+
+        private Probe(String query) {
+            this.query = query;
+        }
+
+        private QueryStats stats() {
+            long count = latency.getCount();
+            return new QueryStats(count, latency.getMean(),
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(90),
+                    latency.getValueAtPercentile(99), latency.getValueAtPercentile(99.9), latency.getMax(),
+                    THREADS == null || count == 0 ? -1 : allocated.sum() / count);
+        }
+    }
+
+    /**
+     * The latency and allocation statistics of one query. Latencies are in nanoseconds.
+     */
+    @Value
+    public static class QueryStats {
+        long count;
+        double meanNanos;
+        long p50Nanos;
+        long p90Nanos;
+        long p99Nanos;
+        long p999Nanos;
+        long maxNanos;
+
+        /**
+         * The mean number of bytes allocated per call, or -1 if the JVM does not count allocations.
+         */
+        long allocatedBytesPerCall;
+
+        @ConstructorProperties({"count", "meanNanos", "p50Nanos", "p90Nanos", "p99Nanos", "p999Nanos", "maxNanos",
+                "allocatedBytesPerCall"})
+        public QueryStats(long count, double meanNanos, long p50Nanos, long p90Nanos, long p99Nanos,
+                          long p999Nanos, long maxNanos, long allocatedBytesPerCall) {
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p90Nanos = p90Nanos;
+            this.p99Nanos = p99Nanos;
+            this.p999Nanos = p999Nanos;
+            this.maxNanos = maxNanos;
+            this.allocatedBytesPerCall = allocatedBytesPerCall;
+        }
+    }
+
+    /**
+     * The size and duration of a load.
+     */
+    @Value
+    public static class LoadStats {
+        long records;
+        long bytes;
+        long nanos;
+
+        @ConstructorProperties({"records", "bytes", "nanos"})
+        public LoadStats(long records, long bytes, long nanos) {
+            this.records = records;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package base;
+
+import java.util.Map;
+
+/**
+ * The management interface of an {@link Instrumentation}, as registered with the platform MBean server.
+ */
+public interface InstrumentationMXBean {
+
+    /**
+     * Tells whether queries are being measured.
+     *
+     * @return true if measuring is on
+     */
+    boolean isEnabled();
+
+    /**
+     * Turns measuring of queries on or off.
+     *
+     * @param enabled true to measure queries
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the statistics of every measured query.
+     *
+     * @return the statistics by query name
+     */
+    Map<String, Instrumentation.QueryStats> getQueryStats();
+
+    /**
+     * Returns the statistics of the last load.
+     *
+     * @return the load statistics, with zero values if nothing was loaded
+     */
+    Instrumentation.LoadStats getLastLoad();
+
+    /**
+     * Forgets the statistics of every query.
+     */
+    void reset();
+}
@@ -0,0 +1,137 @@
+package base;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Loads entities from a JSON array one record at a time using Jackson's token-level parser.
+ * Records are handed to a sink in bounded batches, so the whole array is never materialized twice.
+ *
+ * @param <CarsSet> the type of the entities
+ */
+@Getter
+public final class JsonStreamLoader<CarsSet> {
+    /**
+     * The number of records handed to the sink at once when no batch size is given.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final Class<CarsSet> clazz;
+    private final int batchSize;
+    private final ProgressListener progress;
+
+    /**
+     * Creates a loader with the default batch size and no progress reporting.
+     *
+     * @param clazz the type of your entity (first class)
+     */
+    public JsonStreamLoader(@NonNull final Class<CarsSet> clazz) {
+        this(clazz, DEFAULT_BATCH_SIZE, ProgressListener.NONE);
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param clazz the type of your entity (first class)
+     * @param batchSize the maximum number of records handed to the sink at once
+     * @param progress the listener notified after every batch
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     */
+    public JsonStreamLoader(
+            @NonNull final Class<CarsSet> clazz,
+            final int batchSize,
+            @NonNull final ProgressListener progress) {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.clazz = clazz;
+        this.batchSize = batchSize;
+        this.progress = progress;
+    }
+
+    /**
+     * Reads a JSON array of entities and feeds them to the sink in batches.
+     *
+     * @param in the JSON source, closed when loading finishes
+     * @param sink the consumer of each batch
+     * @return the number of records read
+     * @throws IOException if an I/O error happens or the source is not a JSON array
+     * @implNote The batch list is reused between calls, so the sink must copy the records it wants to keep
+     *           instead of holding on to the list itself.
+     *           Every call emits a {@code base.JsonLoad} Flight Recorder event with the records and bytes read.
+     */
+    public long load(
+            @NonNull final InputStream in,
+            @NonNull final Consumer<? super List<CarsSet>> sink) throws IOException {
+
+        final LoadEvent event = new LoadEvent();
+        event.begin();
+        try (JsonParser parser = Repository.MAPPER.getFactory().createParser(in)) {
+            event.entityType = clazz.getName();
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected a JSON array of entities");
+            }
+            final ObjectReader reader = Repository.MAPPER.readerFor(clazz);
+            final List<CarsSet> batch = new ArrayList<>(batchSize);
+            long count = 0;
+
+            // Bind one array element at a time, flushing whenever the batch is full
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null) {
+                    throw new EOFException("Unexpected end of input after " + count + " records");
+                }
+                batch.add(reader.readValue(parser));
+                event.records = ++count;
+                if (batch.size() == batchSize) {
+                    sink.accept(batch);
+                    batch.clear();
+                    progress.onProgress(count, parser.getCurrentLocation().getByteOffset());
+                }
+            }
+
+            // Flush the last, partially filled batch
+            if (!batch.isEmpty()) {
+                sink.accept(batch);
+                batch.clear();
+            }
+            event.bytes = parser.getCurrentLocation().getByteOffset();
+            event.completed = true;
+            progress.onProgress(count, event.bytes);
+            return count;
+        } finally {
+            // Failed loads are recorded too, with the records read so far
+            event.commit();
+        }
+    }
+
+    /**
+     * Receives progress updates while a JSON source is being loaded.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * A listener that ignores every update.
+         */
+        ProgressListener NONE = (records, bytes) -> { };
+
+        /**
+         * Called after every batch and once more when loading finishes.
+         *
+         * @param records the number of records read so far
+         * @param bytes the number of bytes consumed so far, or -1 if unknown
+         */
+        void onProgress(long records, long bytes);
+    }
+}
@@ -0,0 +1,32 @@
+package base;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event emitted for every JSON load of a {@link JsonStreamLoader}.
+ * Its duration covers the whole load; it costs next to nothing unless a recording enables it.
+ */
+@Name("base.JsonLoad")
+@Label("JSON Load")
+@Category({"Repository", "Load"})
+@Description("Parsing a JSON array of entities")
+final class LoadEvent extends Event {
+    @Label("Entity Type")
+    String entityType;
+
+    @Label("Records")
+    long records;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Completed")
+    @Description("Whether the whole array was read without error")
+    boolean completed;
+}
@@ -0,0 +1,94 @@
+package base;
+
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * Runs a {@link Collector} over a list by splitting it across a {@link ForkJoinPool}.
+ * Every leaf task accumulates its own range into a private container, and containers are combined pairwise
+ * as the tasks join, so threads never share mutable state.
+ * Since the left half is always combined with the right half, ordered results keep the list order.
+ */
+public final class ParallelScan {
+    /**
+     * The smallest range a leaf task is given, so tiny ranges do not pay the fork overhead.
+     */
+    public static final int MIN_LEAF_SIZE = 1024;
+
+    private ParallelScan() {
+    }
+
+    /**
+     * Collects the items of a list in parallel.
+     *
+     * @param items the list to scan, which must support fast random access
+     * @param collector the collector describing the per-thread containers and how to combine them
+     * @param pool the pool running the tasks
+     * @param <CarsSet> the type of the items
+     * @param <A> the type of the per-thread containers
+     * @param <R> the type of the result
+     * @return the finished result
+     */
+    public static <CarsSet, A, R> R collect(
+            @NonNull final List<? extends CarsSet> items,
+            @NonNull final Collector<? super CarsSet, A, R> collector,
+            @NonNull final ForkJoinPool pool) {
+
+        // Aim for a few leaves per worker so that uneven ranges still balance out
+        final int leafSize = Math.max(MIN_LEAF_SIZE, items.size() / (pool.getParallelism() * 4) + 1);
+        final A container = pool.invoke(new Task<>(items, collector, 0, items.size(), leafSize));
+        return collector.finisher().apply(container);
+    }
+
+    /**
+     * Accumulates one range of the list, splitting it in halves while it is larger than a leaf.
+     */
+    private static final class Task<CarsSet, A> extends RecursiveTask<A> {
+        private final List<? extends CarsSet> items;
+        private final Collector<? super CarsSet, A, ?> collector;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        private Task(
+                final List<? extends CarsSet> items,
+                final Collector<? super CarsSet, A, ?> collector,
+                final int from,
+                final int to,
+                final int leafSize) {
+            this.items = items;
+            this.collector = collector;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= leafSize) {
+                final Supplier<A> supplier = collector.supplier();
+                final BiConsumer<A, ? super CarsSet> accumulator = collector.accumulator();
+                final A container = supplier.get();
+                for (int i = from; i < to; i++) {
+                    accumulator.accept(container, items.get(i));
+                }
+                return container;
+            }
+
+            // Fork the left half, compute the right half here, then combine in list order
+            final int middle = (from + to) >>> 1;
+            final Task<CarsSet, A> left = new Task<>(items, collector, from, middle, leafSize);
+            left.fork();
+            final A right = new Task<>(items, collector, middle, to, leafSize).compute();
+            final BinaryOperator<A> combiner = collector.combiner();
+            return combiner.apply(left.join(), right);
+        }
+    }
+}
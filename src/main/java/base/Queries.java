@@ -4,6 +4,7 @@ import cars.CarsSet;
 
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -19,11 +20,21 @@ public interface Queries<CarsSet, Specifications, CarType extends Enum<cars.Cars
      * Retrieves the highest price among all CarsSet objects stored in the repository.
      *
      * @return The highest price found among CarsSet instances.
+     * @throws NoSuchElementException if the repository holds no cars, created by {@link #noHighestPrice()}
      * @implNote This method iterates through all CarsSet objects in the repository to determine the highest price.
      *           It computes and returns the maximum price found.
      */
     long getHighestPrice();
 
+    /**
+     * Creates the exception every implementation of {@link #getHighestPrice()} throws when there are no cars.
+     *
+     * @return a new NoSuchElementException
+     */
+    static NoSuchElementException noHighestPrice() {
+        return new NoSuchElementException("There is no highest price without any cars");
+    }
+
     /**
      * Retrieves a set of unique names of CarsSet objects stored in the repository.
      *
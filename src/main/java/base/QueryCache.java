@@ -0,0 +1,221 @@
+package base;
+
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of query results that tracks which parts of a repository each result depends on.
+ *
+ * <p>Every result is stored with the repository version it was computed from and the set of dependencies
+ * (such as the fields it reads) declared by the caller. When a commit changes some dependencies, only the results
+ * depending on them are dropped; a commit that inserts or removes entities drops everything.
+ * A result computed from a version older than the last change of one of its dependencies is returned
+ * but never stored, so a slow query cannot put a stale result back after an invalidation.
+ *
+ * <p>The cache holds at most a configured number of results and evicts either the least recently used
+ * or the oldest one. Results are shared between callers and must be immutable.
+ */
+public final class QueryCache {
+    private final int maximumSize;
+    private final Map<Object, Entry> entries;
+    private final Map<Object, Long> changedAt = new HashMap<>();
+    private long everythingChangedAt = -1;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maximumSize the highest number of results kept
+     * @param eviction which result makes room when the cache is full
+     * @throws IllegalArgumentException if the maximum size is not positive
+     */
+    public QueryCache(final int maximumSize, @NonNull final Eviction eviction) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, eviction == Eviction.LRU) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Object, Entry> eldest) {
+                if (size() > QueryCache.this.maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a query, computing and caching it on a miss.
+     *
+     * @param version the repository version the computation reads from
+     * @param key the query and its parameters, with value-based equality
+     * @param dependencies what the result depends on
+     * @param computation computes the result from the given version
+     * @param <V> the type of the result
+     * @return the cached or computed result
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(
+            final long version,
+            @NonNull final Object key,
+            @NonNull final Set<?> dependencies,
+            @NonNull final Supplier<? extends V> computation) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                return (V) entry.value;
+            }
+        }
+
+        // Compute without holding the lock, so other queries are not blocked meanwhile
+        misses.increment();
+        V value = computation.get();
+        synchronized (this) {
+            if (!changedSince(version, dependencies)) {
+                entries.put(key, new Entry(value, dependencies));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops the results depending on anything that changed in a new version.
+     *
+     * @param version the version that changed them
+     * @param changed the dependencies that changed
+     */
+    public synchronized void invalidate(final long version, @NonNull final Set<?> changed) {
+        for (Object dependency : changed) {
+            changedAt.put(dependency, version);
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            for (Object dependency : changed) {
+                if (entry.dependencies.contains(dependency)) {
+                    iterator.remove();
+                    invalidations.increment();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every result, because a new version changed what all of them depend on.
+     *
+     * @param version the version that changed them
+     */
+    public synchronized void invalidateAll(final long version) {
+        everythingChangedAt = version;
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return the current size of the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the counters of this cache since it was created.
+     *
+     * @return a snapshot of the statistics
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+
+    private boolean changedSince(final long version, final Set<?> dependencies) {
+        if (everythingChangedAt > version) {
+            return true;
+        }
+        for (Object dependency : dependencies) {
+            if (changedAt.getOrDefault(dependency, -1L) > version) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The Eviction enum lists which result a full cache drops to make room.
+     */
+    public enum Eviction {
+
+        /**
+         * Drops the result that was read or stored least recently.
+         */
+        LRU,
+
+        /**
+         * Drops the result that was stored first, ignoring reads.
+         */
+        FIFO
+    }
+
+    /**
+     * Counters describing how a cache has been used.
+     */
+    @Value
+    public static class Stats {
+        /**
+         * The number of lookups answered from the cache.
+         */
+        long hits;
+
+        /**
+         * The number of lookups that computed their result.
+         */
+        long misses;
+
+        /**
+         * The number of results dropped to respect the maximum size.
+         */
+        long evictions;
+
+        /**
+         * The number of results dropped because the repository changed.
+         */
+        long invalidations;
+
+        /**
+         * Returns the share of lookups answered from the cache.
+         *
+         * @return a ratio between 0 and 1, or 0 if there was no lookup
+         */
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : hits / (double) lookups;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final Set<?> dependencies;
+
+        private Entry(Object value, Set<?> dependencies) {
+            this.value = value;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package base;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event emitted for every query measured by an enabled {@link Instrumentation}.
+ */
+@Name("base.Query")
+@Label("Repository Query")
+@Category({"Repository", "Query"})
+@Description("One call of a measured query method")
+final class QueryEvent extends Event {
+    @Label("Query")
+    String query;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the calling thread during the query, or -1 if unsupported")
+    @DataAmount
+    long allocated;
+}
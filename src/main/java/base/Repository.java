@@ -4,42 +4,330 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.NonNull;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
  * A repository for storing entities.
  *
+ * <p>The entities are published as immutable {@link Snapshot}s. Readers never lock: they read whichever
+ * snapshot is current and keep a consistent view for as long as they hold on to it.
+ * Writers change entities by key and are serialized; each commit copies the entity list once,
+ * applies all of its changes and publishes the result as the next version.
+ * Registered {@link Aggregate}s are updated by each commit and published with it,
+ * and registered {@link CommitListener}s are told about its changes just before it is published.
+ *
  * @param <CarsSet> the type of the entities
  */
 public abstract class Repository<CarsSet> {
     public static final ObjectMapper MAPPER = new ObjectMapper();
-    private final List<CarsSet> entities;
+    private static final Object POSITIONS = new Object();
+
+    private final Object writeLock = new Object();
+    private final List<Aggregate<CarsSet, ?>> aggregates = new ArrayList<>();
+    private final List<CommitListener<CarsSet>> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot<CarsSet> current;
 
     /**
      * A constructor for initializing the repository.
      *
      * @param clazz the type of your entity (first class)
      * @throws IOException if an I/O error happens
+     * @throws IllegalArgumentException if an entity has no key or two entities share one
      */
+    // Only the subclass's checkKeys() and keyOf() see this, which must not depend on its state
+    @SuppressWarnings("this-escape")
     protected Repository(
             @NonNull final Class<CarsSet> clazz) throws IOException {
 
-        this.entities = MAPPER.readValue(
-                Repository.class.getResourceAsStream("../data.json"),
+        final List<CarsSet> entities = MAPPER.readValue(
+                defaultSource(),
                 MAPPER.getTypeFactory().constructCollectionType(ArrayList.class, clazz)
         );
+        this.current = new Snapshot<>(0, Collections.unmodifiableList(entities));
+        checkKeys(current);
+    }
+
+    /**
+     * A constructor for initializing the repository in streaming mode.
+     *
+     * @param loader the loader reading the entities one batch at a time
+     * @param in the JSON source, closed when loading finishes
+     * @throws IOException if an I/O error happens
+     * @throws IllegalArgumentException if an entity has no key or two entities share one
+     * @implNote The entities are appended batch by batch and the backing list is trimmed afterwards,
+     *           so peak memory stays close to the final size of the dataset.
+     */
+    @SuppressWarnings("this-escape")
+    protected Repository(
+            @NonNull final JsonStreamLoader<CarsSet> loader,
+            @NonNull final InputStream in) throws IOException {
+
+        final ArrayList<CarsSet> loaded = new ArrayList<>();
+        loader.load(in, loaded::addAll);
+        loaded.trimToSize();
+        this.current = new Snapshot<>(0, Collections.unmodifiableList(loaded));
+        checkKeys(current);
+    }
+
+    /**
+     * A constructor for initializing the repository with entities that are already loaded.
+     *
+     * @param entities the read-only entities of the repository, adopted as they are
+     * @throws IllegalArgumentException if an entity has no key or two entities share one
+     */
+    @SuppressWarnings("this-escape")
+    protected Repository(@NonNull final List<CarsSet> entities) {
+        this.current = new Snapshot<>(0, entities);
+        checkKeys(current);
+    }
+
+    /**
+     * Opens the bundled data file.
+     *
+     * @return the stream of the bundled {@code data.json}
+     */
+    protected static InputStream defaultSource() {
+        return Repository.class.getResourceAsStream("../data.json");
     }
 
     /**
      * Returns the entities.
      *
-     * @return the list of entities
+     * @return the read-only list of entities of the current snapshot
      */
     public final List<CarsSet> getAll() {
-        return Collections.unmodifiableList(this.entities);
+        return current.getEntities();
+    }
+
+    /**
+     * Returns the current snapshot.
+     *
+     * @return the latest committed state of the repository
+     */
+    public final Snapshot<CarsSet> snapshot() {
+        return current;
+    }
+
+    /**
+     * Looks up an entity by its key in the current snapshot.
+     *
+     * @param key the key to look up
+     * @return the entity with the given key, or an empty Optional if there is none
+     */
+    public final Optional<CarsSet> find(@NonNull final String key) {
+        return find(current, key);
+    }
+
+    /**
+     * Looks up an entity by its key in a given snapshot.
+     *
+     * @param snapshot a snapshot of this repository
+     * @param key the key to look up
+     * @return the entity with the given key in that snapshot, or an empty Optional if there is none
+     */
+    public final Optional<CarsSet> find(@NonNull final Snapshot<CarsSet> snapshot, @NonNull final String key) {
+        final Integer position = positions(snapshot).get(key);
+        return position == null ? Optional.empty() : Optional.of(snapshot.getEntities().get(position));
+    }
+
+    /**
+     * Inserts an entity, or replaces the entity with the same key.
+     *
+     * @param entity the entity to store
+     * @return the replaced entity, or an empty Optional if the key was new
+     */
+    public final Optional<CarsSet> put(@NonNull final CarsSet entity) {
+        return write(transaction -> transaction.put(entity));
+    }
+
+    /**
+     * Removes the entity with the given key.
+     *
+     * @param key the key of the entity to remove
+     * @return the removed entity, or an empty Optional if there was none
+     */
+    public final Optional<CarsSet> remove(@NonNull final String key) {
+        return write(transaction -> transaction.remove(key));
+    }
+
+    /**
+     * Replaces the entity with the given key by the result of a function.
+     *
+     * @param key the key of the entity to update
+     * @param function the function computing the new entity from the old one, keeping its key
+     * @return the new entity, or an empty Optional if there was no entity with the key
+     */
+    public final Optional<CarsSet> update(
+            @NonNull final String key,
+            @NonNull final UnaryOperator<CarsSet> function) {
+        return write(transaction -> transaction.update(key, function));
+    }
+
+    /**
+     * Applies several changes as one commit, so readers see either all of them or none.
+     *
+     * @param changes the callback issuing the changes against the batch
+     * @return the changes that were applied, in order
+     */
+    public final List<Change<CarsSet>> apply(@NonNull final Consumer<? super Batch<CarsSet>> changes) {
+        return write(transaction -> {
+            changes.accept(transaction);
+            return Collections.unmodifiableList(transaction.changes);
+        });
+    }
+
+    /**
+     * Registers an aggregate and feeds it every entity of the current snapshot.
+     * From then on it is updated with every commit.
+     *
+     * @param aggregate the aggregate, which also serves as its own key when reading the value
+     * @throws IllegalArgumentException if the aggregate is already registered
+     */
+    public final void register(@NonNull final Aggregate<CarsSet, ?> aggregate) {
+        synchronized (writeLock) {
+            if (aggregates.contains(aggregate)) {
+                throw new IllegalArgumentException("The aggregate is already registered");
+            }
+            final Snapshot<CarsSet> snapshot = current;
+            for (final CarsSet entity : snapshot.getEntities()) {
+                aggregate.add(entity);
+            }
+            aggregates.add(aggregate);
+
+            // No commit can run meanwhile, so the value belongs to the current snapshot
+            snapshot.attach(aggregate, aggregate.value());
+        }
+    }
+
+    /**
+     * Adds a listener that is told about every later commit.
+     *
+     * @param listener the listener
+     */
+    public final void addCommitListener(@NonNull final CommitListener<CarsSet> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addCommitListener(CommitListener)}.
+     *
+     * @param listener the listener
+     */
+    public final void removeCommitListener(@NonNull final CommitListener<CarsSet> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the value of a registered aggregate for the current snapshot.
+     *
+     * @param aggregate the registered aggregate
+     * @param <V> the type of the aggregated value
+     * @return the value published with the current snapshot
+     * @throws IllegalArgumentException if the aggregate is not registered
+     */
+    public final <V> V aggregate(@NonNull final Aggregate<CarsSet, V> aggregate) {
+        return aggregate(current, aggregate);
+    }
+
+    /**
+     * Returns the value of a registered aggregate for the given snapshot.
+     *
+     * @param snapshot a snapshot taken from this repository
+     * @param aggregate the registered aggregate
+     * @param <V> the type of the aggregated value
+     * @return the value published with the snapshot
+     * @throws IllegalArgumentException if the aggregate was not registered when the snapshot was published
+     */
+    public final <V> V aggregate(
+            @NonNull final Snapshot<CarsSet> snapshot,
+            @NonNull final Aggregate<CarsSet, V> aggregate) {
+        return snapshot.derive(aggregate, s -> {
+            throw new IllegalArgumentException("The aggregate is not registered for version " + s.getVersion());
+        });
+    }
+
+    /**
+     * Returns the key identifying an entity.
+     * The constructors may call it on every initial entity to index them, so it must not rely on subclass fields.
+     *
+     * @param entity the entity
+     * @return the unique key of the entity
+     */
+    protected abstract String keyOf(CarsSet entity);
+
+    /**
+     * Checks that every entity of the initial snapshot has a key and that no two entities share one.
+     * Like {@link #keyOf(Object)}, the constructors call it, so it must not rely on subclass fields.
+     *
+     * @param snapshot the initial snapshot
+     * @throws IllegalArgumentException if an entity has no key or two entities share one
+     * @implNote By default the snapshot is indexed by key right away, and later lookups reuse that index.
+     *           Lists that build their entities on access can check their keys more cheaply and leave the index
+     *           to the first lookup.
+     */
+    protected void checkKeys(final Snapshot<CarsSet> snapshot) {
+        positions(snapshot);
+    }
+
+    /**
+     * Turns the entity list computed by a commit into the read-only list published in the next snapshot.
+     *
+     * @param entities the entities of the next snapshot, owned by the callee
+     * @return a read-only list with the same entities in the same order
+     */
+    protected List<CarsSet> seal(final List<CarsSet> entities) {
+        return Collections.unmodifiableList(entities);
+    }
+
+    /**
+     * Returns the positions of the entities of a snapshot by key.
+     *
+     * @param snapshot the snapshot
+     * @return a read-only map from key to list position
+     * @throws IllegalArgumentException if an entity has no key or two entities share one
+     */
+    private Map<String, Integer> positions(final Snapshot<CarsSet> snapshot) {
+        return snapshot.derive(POSITIONS, s -> {
+            final Map<String, Integer> positions = new HashMap<>();
+            for (int i = 0; i < s.getEntities().size(); i++) {
+                final String key = keyOf(s.getEntities().get(i));
+                if (key == null) {
+                    throw new IllegalArgumentException("The entity at position " + i + " has no key");
+                }
+                if (positions.put(key, i) != null) {
+                    throw new IllegalArgumentException("Duplicate key " + key);
+                }
+            }
+            return positions;
+        });
+    }
+
+    /**
+     * Runs a write operation in a new transaction and publishes its result.
+     *
+     * @param operation the operation issuing changes against the transaction
+     * @param <R> the result type of the operation
+     * @return the result of the operation
+     */
+    private <R> R write(final Function<Transaction, R> operation) {
+        synchronized (writeLock) {
+            final Transaction transaction = new Transaction(current);
+            final R result = operation.apply(transaction);
+            transaction.commit();
+            return result;
+        }
     }
 
     /**
@@ -47,8 +335,168 @@ public abstract class Repository<CarsSet> {
      */
     @Override
     public final String toString() {
-        return entities.stream()
+        return current.getEntities().stream()
                 .map(Object::toString)
                 .collect(Collectors.joining("\n"));
     }
+
+    /**
+     * A set of changes committed together.
+     *
+     * @param <CarsSet> the type of the entities
+     */
+    public interface Batch<CarsSet> {
+        /**
+         * Inserts an entity, or replaces the entity with the same key.
+         *
+         * @param entity the entity to store
+         * @return the replaced entity, or an empty Optional if the key was new
+         */
+        Optional<CarsSet> put(CarsSet entity);
+
+        /**
+         * Removes the entity with the given key.
+         *
+         * @param key the key of the entity to remove
+         * @return the removed entity, or an empty Optional if there was none
+         */
+        Optional<CarsSet> remove(String key);
+
+        /**
+         * Replaces the entity with the given key by the result of a function.
+         *
+         * @param key the key of the entity to update
+         * @param function the function computing the new entity from the old one, keeping its key
+         * @return the new entity, or an empty Optional if there was no entity with the key
+         */
+        Optional<CarsSet> update(String key, UnaryOperator<CarsSet> function);
+    }
+
+    /**
+     * Receives the changes of every commit of a repository.
+     *
+     * @param <CarsSet> the type of the entities
+     */
+    @FunctionalInterface
+    public interface CommitListener<CarsSet> {
+        /**
+         * Called by the writer after a commit is complete but before its snapshot becomes visible to readers,
+         * so anything derived from the previous version can be dropped before anyone reads the next one.
+         * The listener runs while the write lock is held: it must be quick and must not throw.
+         *
+         * @param version the version of the snapshot about to be published
+         * @param changes the changes of the commit, in order
+         */
+        void committed(long version, List<Change<CarsSet>> changes);
+    }
+
+    /**
+     * The private working copy of one commit.
+     * The entity list and the key positions are copied on the first change; removed entities leave
+     * a {@code null} slot that is compacted away when the transaction commits.
+     */
+    private final class Transaction implements Batch<CarsSet> {
+        private final Snapshot<CarsSet> base;
+        private final List<Change<CarsSet>> changes = new ArrayList<>();
+        private ArrayList<CarsSet> entities;
+        private Map<String, Integer> positions;
+        private boolean removed;
+
+        private Transaction(final Snapshot<CarsSet> base) {
+            this.base = base;
+        }
+
+        @Override
+        public Optional<CarsSet> put(@NonNull final CarsSet entity) {
+            final String key = Objects.requireNonNull(keyOf(entity), "key");
+            copy();
+            final Integer position = positions.get(key);
+            if (position == null) {
+                positions.put(key, entities.size());
+                entities.add(entity);
+                changes.add(new Change<>(null, entity));
+                return Optional.empty();
+            }
+            final CarsSet before = entities.set(position, entity);
+            changes.add(new Change<>(before, entity));
+            return Optional.of(before);
+        }
+
+        @Override
+        public Optional<CarsSet> remove(@NonNull final String key) {
+            if (get(key) == null) {
+                return Optional.empty();
+            }
+            copy();
+            final CarsSet before = entities.set(positions.remove(key), null);
+            removed = true;
+            changes.add(new Change<>(before, null));
+            return Optional.of(before);
+        }
+
+        @Override
+        public Optional<CarsSet> update(@NonNull final String key, @NonNull final UnaryOperator<CarsSet> function) {
+            final CarsSet before = get(key);
+            if (before == null) {
+                return Optional.empty();
+            }
+            final CarsSet after = Objects.requireNonNull(function.apply(before), "updated entity");
+            if (!key.equals(keyOf(after))) {
+                throw new IllegalArgumentException("An update must keep the key " + key + " but got " + keyOf(after));
+            }
+            put(after);
+            return Optional.of(after);
+        }
+
+        private CarsSet get(final String key) {
+            final Integer position = (positions != null ? positions : positions(base)).get(key);
+            if (position == null) {
+                return null;
+            }
+            return entities != null ? entities.get(position) : base.getEntities().get(position);
+        }
+
+        private void copy() {
+            if (entities == null) {
+                entities = new ArrayList<>(base.getEntities());
+                positions = new HashMap<>(positions(base));
+            }
+        }
+
+        private void commit() {
+            if (changes.isEmpty()) {
+                return;
+            }
+            if (removed) {
+                // Drop the empty slots and renumber the remaining entities
+                final ArrayList<CarsSet> compacted = new ArrayList<>(positions.size());
+                for (final CarsSet entity : entities) {
+                    if (entity != null) {
+                        positions.put(keyOf(entity), compacted.size());
+                        compacted.add(entity);
+                    }
+                }
+                entities = compacted;
+            }
+            final Snapshot<CarsSet> next = new Snapshot<>(base.getVersion() + 1, seal(entities));
+            next.attach(POSITIONS, positions);
+
+            // Bring every aggregate up to date and publish its value together with the entities
+            for (final Aggregate<CarsSet, ?> aggregate : aggregates) {
+                for (final Change<CarsSet> change : changes) {
+                    if (change.getBefore() != null) {
+                        aggregate.remove(change.getBefore());
+                    }
+                    if (change.getAfter() != null) {
+                        aggregate.add(change.getAfter());
+                    }
+                }
+                next.attach(aggregate, aggregate.value());
+            }
+            for (final CommitListener<CarsSet> listener : listeners) {
+                listener.committed(next.getVersion(), Collections.unmodifiableList(changes));
+            }
+            current = next;
+        }
+    }
 }
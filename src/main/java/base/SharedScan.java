@@ -0,0 +1,77 @@
+package base;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * Combines several {@link Collector}s into one, so that a single pass over the items feeds every one of them.
+ * Each item is read once and handed to the accumulator of every collector in turn, instead of being read again
+ * by a separate scan per collector. The combined collector can run sequentially, on a parallel stream
+ * or through {@link ParallelScan}, since its container combines pairwise like the ones it holds.
+ */
+public final class SharedScan {
+
+    private SharedScan() {
+    }
+
+    /**
+     * Combines collectors into one.
+     *
+     * @param collectors the collectors to feed, in the order of the results
+     * @param <CarsSet> the type of the items
+     * @return a collector whose result holds the result of each collector, at the same position
+     */
+    @SuppressWarnings("unchecked")
+    public static <CarsSet> Collector<CarsSet, ?, List<Object>> of(
+            @NonNull final List<? extends Collector<? super CarsSet, ?, ?>> collectors) {
+        final int count = collectors.size();
+        final Supplier<Object>[] suppliers = new Supplier[count];
+        final BiConsumer<Object, ? super CarsSet>[] accumulators = new BiConsumer[count];
+        final BinaryOperator<Object>[] combiners = new BinaryOperator[count];
+        final Function<Object, Object>[] finishers = new Function[count];
+        for (int i = 0; i < count; i++) {
+            // The containers are opaque here, each one only ever meets the functions of its own collector
+            final Collector<? super CarsSet, Object, Object> collector =
+                    (Collector<? super CarsSet, Object, Object>) collectors.get(i);
+            suppliers[i] = collector.supplier();
+            accumulators[i] = collector.accumulator();
+            combiners[i] = collector.combiner();
+            finishers[i] = collector.finisher();
+        }
+
+        return Collector.<CarsSet, Object[], List<Object>>of(
+                () -> {
+                    final Object[] containers = new Object[count];
+                    for (int i = 0; i < count; i++) {
+                        containers[i] = suppliers[i].get();
+                    }
+                    return containers;
+                },
+                (containers, item) -> {
+                    for (int i = 0; i < count; i++) {
+                        accumulators[i].accept(containers[i], item);
+                    }
+                },
+                (left, right) -> {
+                    for (int i = 0; i < count; i++) {
+                        left[i] = combiners[i].apply(left[i], right[i]);
+                    }
+                    return left;
+                },
+                containers -> {
+                    final List<Object> results = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        results.add(finishers[i].apply(containers[i]));
+                    }
+                    return Collections.unmodifiableList(results);
+                });
+    }
+}
@@ -0,0 +1,96 @@
+package base;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * An immutable, versioned state of a {@link Repository}.
+ * Every committed change publishes a new snapshot, so a reader holding one keeps seeing the same entities
+ * no matter what writers do in the meantime.
+ *
+ * <p>Structures computed from the entities, such as indexes, are attached to the snapshot through
+ * {@link #derive(Object, Function)}: they are built once per version, on first use, and dropped together with it.
+ *
+ * @param <CarsSet> the type of the entities
+ */
+public final class Snapshot<CarsSet> {
+    /**
+     * The version of this snapshot; the initial state of a repository is version 0.
+     */
+    @Getter
+    private final long version;
+
+    /**
+     * The entities of this snapshot, as a read-only list.
+     */
+    @Getter
+    private final List<CarsSet> entities;
+
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> derived = new ConcurrentHashMap<>();
+
+    Snapshot(final long version, @NonNull final List<CarsSet> entities) {
+        this.version = version;
+        this.entities = entities;
+    }
+
+    /**
+     * Returns a structure derived from this snapshot, computing it on first use.
+     * Concurrent callers asking for the same key wait for a single computation.
+     *
+     * @param key the identity of the derived structure
+     * @param factory the function building the structure from this snapshot
+     * @param <V> the type of the derived structure
+     * @return the structure attached to this snapshot under the key
+     * @implNote A factory that fails leaves nothing behind, so the next caller computes the structure again.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V derive(
+            @NonNull final Object key,
+            @NonNull final Function<? super Snapshot<CarsSet>, ? extends V> factory) {
+
+        CompletableFuture<Object> value = derived.get(key);
+        if (value == null) {
+            CompletableFuture<Object> computation = new CompletableFuture<>();
+            value = derived.putIfAbsent(key, computation);
+            if (value == null) {
+                // This caller won the race and builds the structure outside of the map
+                value = computation;
+                try {
+                    computation.complete(factory.apply(this));
+                } catch (RuntimeException | Error e) {
+                    derived.remove(key, computation);
+                    computation.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+
+        try {
+            return (V) value.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Attaches an already computed structure to this snapshot.
+     *
+     * @param key the identity of the derived structure
+     * @param value the structure
+     */
+    void attach(final Object key, final Object value) {
+        derived.putIfAbsent(key, CompletableFuture.completedFuture(value));
+    }
+}
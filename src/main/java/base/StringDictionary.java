@@ -0,0 +1,108 @@
+package base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dictionary of strings used while loading entities, so that repeated values share one instance
+ * and can be referred to by a small integer id.
+ *
+ * <p>Ids are assigned in order of first appearance, starting at 0. The dictionary also estimates how many
+ * bytes of heap the deduplication saved, counting one String and its backing array for every repeated value
+ * that did not have to be kept.
+ * Instances are not thread-safe; they are meant to be filled by a single loading thread.
+ */
+public final class StringDictionary {
+    private static final int STRING_SIZE = 24;
+    private static final int ARRAY_HEADER_SIZE = 16;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private long savedBytes;
+
+    /**
+     * Returns the shared instance equal to a string, adding the string if it is new.
+     *
+     * @param value the string, or {@code null}
+     * @return the shared instance, or {@code null} if the value is {@code null}
+     */
+    public String intern(final String value) {
+        return value == null ? null : strings.get(id(value));
+    }
+
+    /**
+     * Returns the id of a string, adding the string if it is new.
+     *
+     * @param value the string
+     * @return the id of the string
+     */
+    public int id(final String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = strings.size();
+            ids.put(value, id);
+            strings.add(value);
+        } else if (strings.get(id) != value) {
+            savedBytes += sizeOf(value);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the string with an id.
+     *
+     * @param id an id returned by this dictionary
+     * @return the shared instance
+     */
+    public String string(final int id) {
+        return strings.get(id);
+    }
+
+    /**
+     * Returns the number of distinct strings.
+     *
+     * @return the number of ids assigned so far
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Returns every distinct string, indexed by id.
+     *
+     * @return a new array holding the strings in order of first appearance
+     */
+    public String[] toArray() {
+        return strings.toArray(new String[0]);
+    }
+
+    /**
+     * Estimates the heap saved by sharing repeated strings.
+     *
+     * @return the number of bytes no longer retained, assuming compressed object pointers
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    /**
+     * Estimates the heap retained by a string: the String object plus its byte array,
+     * which holds one byte per character when every character is Latin-1 and two otherwise.
+     */
+    private static long sizeOf(final String value) {
+        int bytesPerChar = 1;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+                break;
+            }
+        }
+        return STRING_SIZE + align(ARRAY_HEADER_SIZE + (long) value.length() * bytesPerChar);
+    }
+
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
+    }
+}
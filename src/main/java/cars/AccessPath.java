@@ -0,0 +1,44 @@
+package cars;
+
+import lombok.Value;
+
+import java.util.PrimitiveIterator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * A way for a {@link CarStore} to reach the candidate rows of a {@link CarQuery}.
+ * The rows it yields are a superset of the matches; the planner picks the path yielding the fewest.
+ */
+@Value
+class AccessPath {
+    /**
+     * What the path reads, as shown by {@link CarSetRepository#explain(CarQuery)}.
+     */
+    String description;
+
+    /**
+     * The number of rows the path yields.
+     */
+    int estimate;
+
+    /**
+     * The order the rows come in, or {@code null} for load order.
+     */
+    CarQuery.Order order;
+
+    /**
+     * Opens an iterator over the row positions, read lazily so that a satisfied limit stops the reading.
+     */
+    Supplier<PrimitiveIterator.OfInt> rows;
+
+    /**
+     * Reads every row in load order.
+     *
+     * @param size the number of rows
+     * @return the full scan
+     */
+    static AccessPath scan(final int size) {
+        return new AccessPath("full scan", size, null, () -> IntStream.range(0, size).iterator());
+    }
+}
@@ -0,0 +1,516 @@
+package cars;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The BinarySnapshot class reads and writes the compact binary file used to start a {@link CarSetRepository}
+ * without parsing JSON. The file is read through a memory mapping and either decoded straight into the columns
+ * of a {@link ColumnarCarStore} or queried in place by a {@link MappedCarStore}.
+ *
+ * <p><strong>Layout</strong> (little-endian):
+ * <ul>
+ *     <li>a {@value #HEADER_SIZE}-byte header: magic, format version, size and modification time of the JSON source,
+ *         row count, specification count, dictionary entry count, dictionary byte count and the CRC32 of the body,</li>
+ *     <li>the dictionary: {@code count + 1} int offsets followed by the UTF-8 bytes of every string,
+ *         padded to a multiple of eight bytes,</li>
+ *     <li>one fixed-width {@value #ROW_SIZE}-byte record per row: code id, name id, year, price,
+ *         first specification, specification count (unsigned short), car type ordinal (-1 for none) and one spare byte,</li>
+ *     <li>one fixed-width {@value #SPEC_SIZE}-byte block per specification: id, name id, power and weight.</li>
+ * </ul>
+ * Strings are stored once, as dictionary ids, and a {@code null} string has the id -1.
+ * A file written by another format version, for another source, whose body does not match its checksum,
+ * or whose counts, offsets or ids point outside of it is rejected with an IOException,
+ * and the caller falls back to JSON.
+ */
+final class BinarySnapshot {
+    static final int MAGIC = 0x53524143;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 48;
+    static final int ROW_SIZE = 24;
+    static final int SPEC_SIZE = 16;
+
+    // Offsets of the header fields
+    private static final int SOURCE_SIZE = 8;
+    private static final int SOURCE_MODIFIED = 16;
+    static final int ROW_COUNT = 24;
+    static final int SPEC_COUNT = 28;
+    static final int DICTIONARY_COUNT = 32;
+    static final int DICTIONARY_BYTES = 36;
+    private static final int CHECKSUM = 40;
+
+    /**
+     * The source fingerprint recorded when a snapshot does not belong to any JSON file.
+     */
+    private static final long NO_SOURCE = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Writes the given cars to a snapshot file, replacing it atomically.
+     *
+     * @param cars the cars to write
+     * @param fingerprint the {@link #fingerprint(Path)} of the JSON file taken before the cars were read from it
+     * @param file the snapshot file
+     * @throws IOException if an I/O error happens
+     */
+    static void write(@NonNull final List<CarsSet> cars, @NonNull final long[] fingerprint, @NonNull final Path file)
+            throws IOException {
+        // Write next to the target and move it into place, so readers never see a partial file
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                if (cars instanceof MappedCarStore.Rows mapped) {
+                    // Mapped rows are already encoded; only the source recorded in the header changes
+                    ByteBuffer image = mapped.store().image();
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                            .put(image.slice(0, HEADER_SIZE))
+                            .putLong(SOURCE_SIZE, fingerprint[0])
+                            .putLong(SOURCE_MODIFIED, fingerprint[1])
+                            .flip();
+                    writeFully(channel, header);
+                    writeFully(channel, image.slice(HEADER_SIZE, image.capacity() - HEADER_SIZE));
+                } else {
+                    Encoding encoding = new Encoding(cars);
+                    Output out = new Output(ByteBuffer.allocate(BUFFER_SIZE), channel);
+                    encoding.writeBody(out);
+                    out.flush();
+
+                    // The header goes last, once the checksum of the body is known
+                    writeFully(channel, encoding.header(fingerprint, (int) out.crc.getValue()), 0);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Encodes the given cars into a direct buffer holding exactly the contents of a snapshot file.
+     *
+     * @param cars the cars to encode
+     * @return a little-endian buffer outside of the Java heap
+     * @throws IllegalStateException if the cars do not fit into one buffer
+     */
+    static ByteBuffer encode(@NonNull final List<CarsSet> cars) {
+        Encoding encoding = new Encoding(cars);
+        long length = encoding.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many cars for one buffer: " + length + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_SIZE);
+        try {
+            encoding.writeBody(new Output(buffer, null));
+        } catch (IOException e) {
+            // Nothing is written to a channel
+            throw new IllegalStateException(e);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE));
+        buffer.put(0, encoding.header(new long[]{NO_SOURCE, NO_SOURCE}, (int) crc.getValue()), 0, HEADER_SIZE);
+        return buffer.clear();
+    }
+
+    /**
+     * Reads a snapshot file into a columnar store.
+     *
+     * @param file the snapshot file
+     * @param source the JSON file the snapshot must have been written for, or {@code null} to accept any snapshot
+     * @return a new store holding the cars of the snapshot
+     * @throws IOException if the file cannot be read, is corrupt or is stale
+     */
+    static ColumnarCarStore read(@NonNull final Path file, final Path source) throws IOException {
+        ByteBuffer buffer = map(file, source);
+        int rows = buffer.getInt(ROW_COUNT);
+        int specCount = buffer.getInt(SPEC_COUNT);
+        int dictionaryCount = buffer.getInt(DICTIONARY_COUNT);
+        int dictionaryBytes = buffer.getInt(DICTIONARY_BYTES);
+
+        // Decode every string of the dictionary from one copy of its bytes
+        int offsets = HEADER_SIZE;
+        int bytesStart = offsets + 4 * (dictionaryCount + 1);
+        byte[] bytes = new byte[dictionaryBytes];
+        buffer.get(bytesStart, bytes);
+        String[] dictionary = new String[dictionaryCount];
+        for (int id = 0; id < dictionaryCount; id++) {
+            int from = buffer.getInt(offsets + 4 * id);
+            int to = buffer.getInt(offsets + 4 * (id + 1));
+            dictionary[id] = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        int[] code = new int[rows];
+        int[] name = new int[rows];
+        int[] year = new int[rows];
+        byte[] cartype = new byte[rows];
+        int[] price = new int[rows];
+        int[] specStart = new int[rows + 1];
+        int position = rowsStart(dictionaryCount, dictionaryBytes);
+        for (int row = 0; row < rows; row++, position += ROW_SIZE) {
+            code[row] = buffer.getInt(position);
+            name[row] = buffer.getInt(position + 4);
+            year[row] = buffer.getInt(position + 8);
+            price[row] = buffer.getInt(position + 12);
+            specStart[row] = buffer.getInt(position + 16);
+            specStart[row + 1] = specStart[row] + Short.toUnsignedInt(buffer.getShort(position + 20));
+            cartype[row] = buffer.get(position + 22);
+        }
+
+        int[] specId = new int[specCount];
+        int[] specName = new int[specCount];
+        int[] specPower = new int[specCount];
+        int[] specWeight = new int[specCount];
+        for (int s = 0; s < specCount; s++, position += SPEC_SIZE) {
+            specId[s] = buffer.getInt(position);
+            specName[s] = buffer.getInt(position + 4);
+            specPower[s] = buffer.getInt(position + 8);
+            specWeight[s] = buffer.getInt(position + 12);
+        }
+
+        return new ColumnarCarStore(
+                dictionary, code, name, year, cartype, price, specStart, specId, specName, specPower, specWeight);
+    }
+
+    /**
+     * Maps a snapshot file and checks its header, length, checksum and the references between its sections,
+     * so that decoding or querying it afterwards cannot fail.
+     *
+     * @param file the snapshot file
+     * @param source the JSON file the snapshot must have been written for, or {@code null} to accept any snapshot
+     * @return a read-only, little-endian buffer over the whole file
+     * @throws IOException if the file cannot be read, is corrupt or is stale
+     */
+    static MappedByteBuffer map(@NonNull final Path file, final Path source) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a car snapshot: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a car snapshot: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported car snapshot version " + buffer.getInt(4) + ": " + file);
+        }
+        if (source != null) {
+            long[] fingerprint = fingerprint(source);
+            if (buffer.getLong(SOURCE_SIZE) != fingerprint[0] || buffer.getLong(SOURCE_MODIFIED) != fingerprint[1]) {
+                throw new IOException("Car snapshot is stale: " + file);
+            }
+        }
+
+        int rows = buffer.getInt(ROW_COUNT);
+        int specCount = buffer.getInt(SPEC_COUNT);
+        int dictionaryCount = buffer.getInt(DICTIONARY_COUNT);
+        int dictionaryBytes = buffer.getInt(DICTIONARY_BYTES);
+        if (rows < 0 || specCount < 0 || dictionaryCount < 0 || dictionaryBytes < 0) {
+            throw new IOException("Car snapshot is corrupt: " + file);
+        }
+        // Computed in longs, since damaged counts may overflow the int offsets of a valid file
+        long expected = HEADER_SIZE + Integer.BYTES * (dictionaryCount + 1L)
+                + dictionaryBytes + padding(dictionaryBytes)
+                + (long) ROW_SIZE * rows
+                + (long) SPEC_SIZE * specCount
+                + (long) Integer.BYTES * rows;
+        if (expected != buffer.capacity()) {
+            throw new IOException("Car snapshot is truncated: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE));
+        if ((int) crc.getValue() != buffer.getInt(CHECKSUM)) {
+            throw new IOException("Car snapshot checksum mismatch: " + file);
+        }
+        checkReferences(buffer, file);
+        return buffer;
+    }
+
+    /**
+     * Checks that every dictionary offset, string id, specification range, car type and code index entry
+     * of a snapshot points inside of it. The checksum does not cover the header, whose counts locate the sections.
+     *
+     * @param buffer the snapshot, whose length matches its header
+     * @param file the snapshot file, for the message
+     * @throws IOException if a reference points outside of the snapshot
+     */
+    private static void checkReferences(final ByteBuffer buffer, final Path file) throws IOException {
+        int rows = buffer.getInt(ROW_COUNT);
+        int specCount = buffer.getInt(SPEC_COUNT);
+        int dictionaryCount = buffer.getInt(DICTIONARY_COUNT);
+        int dictionaryBytes = buffer.getInt(DICTIONARY_BYTES);
+
+        // Offsets start at 0 and never decrease or pass the end of the bytes
+        int previous = 0;
+        for (int id = 0; id <= dictionaryCount; id++) {
+            int offset = buffer.getInt(HEADER_SIZE + Integer.BYTES * id);
+            if (offset < previous || offset > dictionaryBytes) {
+                throw new IOException("Car snapshot is corrupt: " + file);
+            }
+            previous = offset;
+        }
+
+        int position = rowsStart(dictionaryCount, dictionaryBytes);
+        for (int row = 0; row < rows; row++, position += ROW_SIZE) {
+            int specStart = buffer.getInt(position + 16);
+            int specs = Short.toUnsignedInt(buffer.getShort(position + 20));
+            byte cartype = buffer.get(position + 22);
+            if (!isString(buffer.getInt(position), dictionaryCount)
+                    || !isString(buffer.getInt(position + 4), dictionaryCount)
+                    || specStart < 0 || specStart > specCount - specs
+                    || cartype < ColumnarCarStore.NULL_ID || cartype >= CarsSet.CarType.values().length) {
+                throw new IOException("Car snapshot is corrupt: " + file);
+            }
+        }
+        for (int spec = 0; spec < specCount; spec++, position += SPEC_SIZE) {
+            if (!isString(buffer.getInt(position + 4), dictionaryCount)) {
+                throw new IOException("Car snapshot is corrupt: " + file);
+            }
+        }
+        for (int i = 0; i < rows; i++, position += Integer.BYTES) {
+            int row = buffer.getInt(position);
+            if (row < 0 || row >= rows) {
+                throw new IOException("Car snapshot is corrupt: " + file);
+            }
+        }
+    }
+
+    private static boolean isString(final int id, final int dictionaryCount) {
+        return id >= -1 && id < dictionaryCount;
+    }
+
+    /**
+     * Computes where the row records start.
+     *
+     * @param dictionaryCount the number of dictionary entries
+     * @param dictionaryBytes the number of UTF-8 bytes of the dictionary
+     * @return the offset of the first row record
+     */
+    static int rowsStart(final int dictionaryCount, final int dictionaryBytes) {
+        return HEADER_SIZE + 4 * (dictionaryCount + 1) + dictionaryBytes + padding(dictionaryBytes);
+    }
+
+    private static int padding(final int dictionaryBytes) {
+        return -dictionaryBytes & 7;
+    }
+
+    /**
+     * Identifies the version of a JSON source by its size and modification time.
+     *
+     * @param source the JSON file, or {@code null} if there is none
+     * @return the size and the modification time in milliseconds
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    static long[] fingerprint(final Path source) throws IOException {
+        if (source == null) {
+            return new long[]{NO_SOURCE, NO_SOURCE};
+        }
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        return new long[]{attributes.size(), attributes.lastModifiedTime().toMillis()};
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    /**
+     * The cars to write, dictionary-coded into columns, with the UTF-8 form of every string and the code index.
+     */
+    private static final class Encoding {
+        private final ColumnarCarStore store;
+        private final byte[][] strings;
+        private final int dictionaryBytes;
+        private final int[] byCode;
+
+        private Encoding(List<CarsSet> cars) {
+            // Columnar rows are written as they are; any other list is dictionary-coded first
+            this.store = cars instanceof ColumnarCarStore.Rows columns
+                    ? columns.store()
+                    : ColumnarCarStore.builder().addAll(cars).build();
+
+            // Encode the dictionary up front, since the header needs its size
+            this.strings = new byte[store.dictionary.length][];
+            int bytes = 0;
+            for (int id = 0; id < strings.length; id++) {
+                strings[id] = store.dictionary[id].getBytes(StandardCharsets.UTF_8);
+                bytes += strings[id].length;
+            }
+            this.dictionaryBytes = bytes;
+
+            // Order rows by the bytes of their code, which is how readers search the index
+            Integer[] rows = new Integer[store.size];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+            Arrays.sort(rows, (row1, row2) -> compareCodes(store.code[row1], store.code[row2]));
+            this.byCode = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                byCode[i] = rows[i];
+            }
+        }
+
+        private long length() {
+            return rowsStart(strings.length, dictionaryBytes)
+                    + (long) ROW_SIZE * store.size
+                    + (long) SPEC_SIZE * store.specStart[store.size]
+                    + (long) Integer.BYTES * store.size;
+        }
+
+        private ByteBuffer header(long[] fingerprint, int crc) {
+            return ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(fingerprint[0])
+                    .putLong(fingerprint[1])
+                    .putInt(store.size)
+                    .putInt(store.specStart[store.size])
+                    .putInt(strings.length)
+                    .putInt(dictionaryBytes)
+                    .putInt(crc)
+                    .putInt(0)
+                    .flip();
+        }
+
+        private void writeBody(Output out) throws IOException {
+            int offset = 0;
+            for (byte[] string : strings) {
+                out.putInt(offset);
+                offset += string.length;
+            }
+            out.putInt(offset);
+            for (byte[] string : strings) {
+                out.put(string);
+            }
+            out.pad(padding(dictionaryBytes));
+
+            for (int row = 0; row < store.size; row++) {
+                int specs = store.specStart[row + 1] - store.specStart[row];
+                if (specs > 0xFFFF) {
+                    throw new IllegalStateException("Too many specifications for car " + store.dictionary[store.code[row]]);
+                }
+                out.putInt(store.code[row]);
+                out.putInt(store.name[row]);
+                out.putInt(store.year[row]);
+                out.putInt(store.price[row]);
+                out.putInt(store.specStart[row]);
+                out.putShort((short) specs);
+                out.put(store.cartype[row]);
+                out.put((byte) 0);
+            }
+
+            for (int s = 0; s < store.specStart[store.size]; s++) {
+                out.putInt(store.specId[s]);
+                out.putInt(store.specName[s]);
+                out.putInt(store.specPower[s]);
+                out.putInt(store.specWeight[s]);
+            }
+
+            for (int row : byCode) {
+                out.putInt(row);
+            }
+        }
+
+        private int compareCodes(int id1, int id2) {
+            if (id1 == ColumnarCarStore.NULL_ID || id2 == ColumnarCarStore.NULL_ID) {
+                return Integer.compare(id1, id2);
+            }
+            return Arrays.compareUnsigned(strings[id1], strings[id2]);
+        }
+    }
+
+    /**
+     * A little-endian writer that either fills a buffer of the exact size, or flushes a smaller buffer
+     * to a channel and checksums everything it flushes.
+     */
+    private static final class Output {
+        private final ByteBuffer buffer;
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+
+        private Output(ByteBuffer buffer, FileChannel channel) throws IOException {
+            this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.channel = channel;
+            if (channel != null) {
+                channel.position(HEADER_SIZE);
+            }
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        private void putShort(short value) throws IOException {
+            ensure(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+        private void put(byte value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put(value);
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void pad(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                put((byte) 0);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (channel == null) {
+                return;
+            }
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+    }
+}
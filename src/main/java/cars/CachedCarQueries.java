@@ -0,0 +1,188 @@
+package cars;
+
+import base.Change;
+import base.Queries;
+import base.QueryCache;
+import base.Repository;
+import base.Snapshot;
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The CachedCarQueries class answers the queries of a {@link CarSetRepository} from a {@link QueryCache},
+ * so repeated calls return the same immutable result instead of building fresh collections.
+ *
+ * <p>Each query declares the fields of CarsSet it reads. When a commit only updates cars, the fields that actually
+ * changed are worked out from the before and after values, and only the results reading one of them are dropped:
+ * a price update keeps the cached names and counts per car type. Inserts and removals drop every result.
+ * Queries returning cars depend on every field, since the cars themselves are part of the result.
+ *
+ * <p>Close the instance to stop listening to the repository.
+ */
+public class CachedCarQueries implements Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType>, AutoCloseable {
+    private static final Set<Field> ALL = Collections.unmodifiableSet(EnumSet.allOf(Field.class));
+    private static final Set<Field> PRICE = Collections.unmodifiableSet(EnumSet.of(Field.PRICE));
+    private static final Set<Field> NAME = Collections.unmodifiableSet(EnumSet.of(Field.NAME));
+    private static final Set<Field> CARTYPE = Collections.unmodifiableSet(EnumSet.of(Field.CARTYPE));
+
+    private final CarSetRepository repository;
+    private final QueryCache cache;
+    private final Repository.CommitListener<CarsSet> listener = this::committed;
+
+    /**
+     * Creates a caching view of a repository.
+     *
+     * @param repository the repository to query
+     * @param cache the cache holding the results, which must not be shared with another repository
+     */
+    public CachedCarQueries(@NonNull final CarSetRepository repository, @NonNull final QueryCache cache) {
+        this.repository = repository;
+        this.cache = cache;
+        repository.addCommitListener(listener);
+    }
+
+    @Override
+    public long getHighestPrice() {
+        return query("getHighestPrice", PRICE, Queries::getHighestPrice);
+    }
+
+    @Override
+    public Set<String> getCarsName() {
+        return query("getCarsName", NAME, queries -> Collections.unmodifiableSet(queries.getCarsName()));
+    }
+
+    @Override
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        return query("getCarsOrderByPriceDesc", ALL,
+                queries -> Collections.unmodifiableList(queries.getCarsOrderByPriceDesc()));
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        return query("getCountOfCarsByCarType", CARTYPE,
+                queries -> Collections.unmodifiableMap(queries.getCountOfCarsByCarType()));
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        return query("getCarsByCarTypes", ALL, queries -> {
+            Map<CarsSet.CarType, Set<CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+            queries.getCarsByCarTypes().forEach((carType, cars) -> result.put(carType, Collections.unmodifiableSet(cars)));
+            return Collections.unmodifiableMap(result);
+        });
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+        return query("getCarsByCarTypeAndCodes", ALL, queries -> {
+            Map<CarsSet.CarType, Map<String, CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+            queries.getCarsByCarTypeAndCodes().forEach((carType, cars) -> result.put(carType, Collections.unmodifiableMap(cars)));
+            return Collections.unmodifiableMap(result);
+        });
+    }
+
+    /**
+     * Retrieves the cars whose price lies within a closed range, caching the result per range.
+     *
+     * @param min the lowest price to include
+     * @param max the highest price to include
+     * @return an unmodifiable List of the matching cars sorted by price in ascending order
+     */
+    public List<CarsSet> findByPriceBetween(final int min, final int max) {
+        return cached(List.of("findByPriceBetween", min, max), ALL,
+                snapshot -> Collections.unmodifiableList(repository.findByPriceBetween(min, max)));
+    }
+
+    /**
+     * Retrieves the most expensive cars, caching the result per count.
+     *
+     * @param k the number of cars to retrieve
+     * @return an unmodifiable List of at most k cars sorted by price in descending order
+     */
+    public List<CarsSet> topByPrice(final int k) {
+        return cached(List.of("topByPrice", k), ALL,
+                snapshot -> Collections.unmodifiableList(repository.topByPrice(k)));
+    }
+
+    /**
+     * Returns the counters of the underlying cache.
+     *
+     * @return the hit, miss, eviction and invalidation counts
+     */
+    public QueryCache.Stats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Stops listening to the repository. Cached results are no longer invalidated afterwards.
+     */
+    @Override
+    public void close() {
+        repository.removeCommitListener(listener);
+    }
+
+    private <V> V query(
+            final String name,
+            final Set<Field> fields,
+            final Function<Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType>, V> query) {
+        return cached(name, fields, snapshot -> query.apply(repository.at(snapshot)));
+    }
+
+    private <V> V cached(final Object key, final Set<Field> fields, final Function<Snapshot<CarsSet>, V> query) {
+        Snapshot<CarsSet> snapshot = repository.snapshot();
+        return cache.get(snapshot.getVersion(), key, fields, () -> query.apply(snapshot));
+    }
+
+    /**
+     * Works out what a commit changed and drops the results that depend on it.
+     */
+    private void committed(final long version, final List<Change<CarsSet>> changes) {
+        Set<Field> changed = EnumSet.noneOf(Field.class);
+        for (Change<CarsSet> change : changes) {
+            if (!change.isUpdate()) {
+                cache.invalidateAll(version);
+                return;
+            }
+            changed.addAll(Field.diff(change.getBefore(), change.getAfter()));
+        }
+        if (!changed.isEmpty()) {
+            cache.invalidate(version, changed);
+        }
+    }
+
+    /**
+     * The fields of CarsSet a cached result can depend on. The code never changes, since it is the key.
+     */
+    private enum Field {
+        NAME, YEAR, CARTYPE, PRICE, SPECIFICATIONS;
+
+        private static Set<Field> diff(final CarsSet before, final CarsSet after) {
+            Set<Field> changed = EnumSet.noneOf(Field.class);
+            if (!Objects.equals(before.getName(), after.getName())) {
+                changed.add(NAME);
+            }
+            if (before.getYear() != after.getYear()) {
+                changed.add(YEAR);
+            }
+            if (before.getCartype() != after.getCartype()) {
+                changed.add(CARTYPE);
+            }
+            if (before.getPrice() != after.getPrice()) {
+                changed.add(PRICE);
+            }
+            // Specifications compare equal by id only, so any other set instance counts as a change
+            if (before.getSpecifications() != after.getSpecifications()) {
+                changed.add(SPECIFICATIONS);
+            }
+            return changed;
+        }
+    }
+}
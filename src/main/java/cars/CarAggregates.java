@@ -0,0 +1,174 @@
+package cars;
+
+import base.Aggregate;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The CarAggregates class provides incrementally maintained {@link Aggregate}s over CarsSet instances.
+ * Each factory method returns a new, unregistered aggregate; register it with
+ * {@link CarSetRepository#register(Aggregate)} and read it with {@link CarSetRepository#aggregate(Aggregate)}.
+ *
+ * <p>Aggregates are only written by the repository's single writer, so they keep plain primitive counters;
+ * readers only ever see the immutable values published with each snapshot.
+ * The per-CarType aggregates leave out cars without a car type, as the grouped queries do.
+ */
+public final class CarAggregates {
+    private static final CarsSet.CarType[] CAR_TYPES = CarsSet.CarType.values();
+
+    private CarAggregates() {
+    }
+
+    /**
+     * Counts the cars of each car type.
+     *
+     * @return an aggregate whose value maps each occurring CarType to its number of cars
+     */
+    public static Aggregate<CarsSet, Map<CarsSet.CarType, Long>> countByCarType() {
+        return new CountByCarType();
+    }
+
+    /**
+     * Tracks the highest price, including after the most expensive car is removed.
+     *
+     * @return an aggregate whose value is the highest price, or empty when there are no cars
+     */
+    public static Aggregate<CarsSet, OptionalInt> highestPrice() {
+        return new HighestPrice();
+    }
+
+    /**
+     * Averages the price of the cars of each car type.
+     *
+     * @return an aggregate whose value maps each occurring CarType to its average price
+     */
+    public static Aggregate<CarsSet, Map<CarsSet.CarType, Double>> averagePriceByCarType() {
+        return new AveragePriceByCarType();
+    }
+
+    /**
+     * Counts the cars of each manufacturing year.
+     *
+     * @return an aggregate whose value maps each occurring year, in ascending order, to its number of cars
+     */
+    public static Aggregate<CarsSet, SortedMap<Integer, Long>> countByYear() {
+        return new CountByYear();
+    }
+
+    /**
+     * Keeps one counter per CarType ordinal.
+     */
+    private static final class CountByCarType implements Aggregate<CarsSet, Map<CarsSet.CarType, Long>> {
+        private final long[] counts = new long[CAR_TYPES.length];
+
+        @Override
+        public void add(CarsSet car) {
+            if (car.getCartype() != null) {
+                counts[car.getCartype().ordinal()]++;
+            }
+        }
+
+        @Override
+        public void remove(CarsSet car) {
+            if (car.getCartype() != null) {
+                counts[car.getCartype().ordinal()]--;
+            }
+        }
+
+        @Override
+        public Map<CarsSet.CarType, Long> value() {
+            Map<CarsSet.CarType, Long> result = new EnumMap<>(CarsSet.CarType.class);
+            for (CarsSet.CarType carType : CAR_TYPES) {
+                if (counts[carType.ordinal()] > 0) {
+                    result.put(carType, counts[carType.ordinal()]);
+                }
+            }
+            return Collections.unmodifiableMap(result);
+        }
+    }
+
+    /**
+     * Keeps a multiset of prices, so removing the most expensive car reveals the next highest price.
+     */
+    private static final class HighestPrice implements Aggregate<CarsSet, OptionalInt> {
+        private final TreeMap<Integer, Integer> prices = new TreeMap<>();
+
+        @Override
+        public void add(CarsSet car) {
+            prices.merge(car.getPrice(), 1, Integer::sum);
+        }
+
+        @Override
+        public void remove(CarsSet car) {
+            // Drop the price entirely once its last car is gone
+            prices.computeIfPresent(car.getPrice(), (price, count) -> count == 1 ? null : count - 1);
+        }
+
+        @Override
+        public OptionalInt value() {
+            return prices.isEmpty() ? OptionalInt.empty() : OptionalInt.of(prices.lastKey());
+        }
+    }
+
+    /**
+     * Keeps a price sum and a count per CarType ordinal.
+     */
+    private static final class AveragePriceByCarType implements Aggregate<CarsSet, Map<CarsSet.CarType, Double>> {
+        private final long[] sums = new long[CAR_TYPES.length];
+        private final long[] counts = new long[CAR_TYPES.length];
+
+        @Override
+        public void add(CarsSet car) {
+            if (car.getCartype() != null) {
+                sums[car.getCartype().ordinal()] += car.getPrice();
+                counts[car.getCartype().ordinal()]++;
+            }
+        }
+
+        @Override
+        public void remove(CarsSet car) {
+            if (car.getCartype() != null) {
+                sums[car.getCartype().ordinal()] -= car.getPrice();
+                counts[car.getCartype().ordinal()]--;
+            }
+        }
+
+        @Override
+        public Map<CarsSet.CarType, Double> value() {
+            Map<CarsSet.CarType, Double> result = new EnumMap<>(CarsSet.CarType.class);
+            for (CarsSet.CarType carType : CAR_TYPES) {
+                if (counts[carType.ordinal()] > 0) {
+                    result.put(carType, sums[carType.ordinal()] / (double) counts[carType.ordinal()]);
+                }
+            }
+            return Collections.unmodifiableMap(result);
+        }
+    }
+
+    /**
+     * Keeps a counter per year.
+     */
+    private static final class CountByYear implements Aggregate<CarsSet, SortedMap<Integer, Long>> {
+        private final TreeMap<Integer, Long> counts = new TreeMap<>();
+
+        @Override
+        public void add(CarsSet car) {
+            counts.merge(car.getYear(), 1L, Long::sum);
+        }
+
+        @Override
+        public void remove(CarsSet car) {
+            counts.computeIfPresent(car.getYear(), (year, count) -> count == 1 ? null : count - 1);
+        }
+
+        @Override
+        public SortedMap<Integer, Long> value() {
+            return Collections.unmodifiableSortedMap(new TreeMap<>(counts));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package cars;
+
+import base.Queries;
+
+import java.util.*;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * The CarCollectors class expresses every {@link base.Queries} method as a {@link Collector} over CarsSet instances.
+ * The collectors keep private containers that are combined pairwise, so they can run sequentially,
+ * on a parallel stream or through {@link base.ParallelScan}, and always return the same results
+ * as the sequential scans of the repository.
+ * Like those scans, the collectors grouped by car type leave out cars without a car type.
+ */
+public final class CarCollectors {
+    private static final CarsSet.CarType[] CAR_TYPES = CarsSet.CarType.values();
+    private static final Comparator<CarsSet> PRICE_DESC = (o1, o2) -> -Integer.compare(o1.getPrice(), o2.getPrice());
+
+    private CarCollectors() {
+    }
+
+    /**
+     * Collects the highest price.
+     *
+     * @return a collector whose result is the highest price
+     * @throws java.util.NoSuchElementException from the finisher if there were no cars, like a scan
+     */
+    public static Collector<CarsSet, ?, Long> highestPrice() {
+        return Collectors.collectingAndThen(maxPrice(), max -> max.orElseThrow(Queries::noHighestPrice));
+    }
+
+    /**
+     * Collects the highest price, if there is one.
+     *
+     * @return a collector whose result is the highest price, empty if there were no cars
+     */
+    public static Collector<CarsSet, ?, OptionalLong> maxPrice() {
+        // The container holds the maximum and whether any car has been seen
+        return Collector.<CarsSet, long[], OptionalLong>of(
+                () -> new long[]{Long.MIN_VALUE, 0},
+                (max, car) -> {
+                    max[0] = Math.max(max[0], car.getPrice());
+                    max[1] = 1;
+                },
+                (left, right) -> {
+                    left[0] = Math.max(left[0], right[0]);
+                    left[1] |= right[1];
+                    return left;
+                },
+                max -> max[1] == 0 ? OptionalLong.empty() : OptionalLong.of(max[0]));
+    }
+
+    /**
+     * Collects the unique names.
+     *
+     * @return a collector whose result is the Set of car names
+     */
+    public static Collector<CarsSet, ?, Set<String>> carsName() {
+        return Collector.<CarsSet, Set<String>>of(
+                HashSet::new,
+                (names, car) -> names.add(car.getName()),
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+    }
+
+    /**
+     * Collects the cars sorted by price in descending order, keeping the encounter order between equal prices.
+     *
+     * @return a collector whose result is the sorted List of cars
+     * @implNote Each container sorts its own cars the first time it is combined, and combining merges two sorted runs,
+     *           so a parallel run performs a merge sort across the worker threads.
+     */
+    public static Collector<CarsSet, ?, List<CarsSet>> orderByPriceDesc() {
+        return Collector.<CarsSet, SortedRun, List<CarsSet>>of(
+                SortedRun::new,
+                SortedRun::add,
+                SortedRun::merge,
+                SortedRun::finish);
+    }
+
+    /**
+     * Collects the number of cars of each car type.
+     *
+     * @return a collector whose result maps each occurring CarType to its number of cars
+     */
+    public static Collector<CarsSet, ?, Map<CarsSet.CarType, Long>> countByCarType() {
+        return Collector.<CarsSet, long[], Map<CarsSet.CarType, Long>>of(
+                () -> new long[CAR_TYPES.length],
+                (counts, car) -> {
+                    if (car.getCartype() != null) {
+                        counts[car.getCartype().ordinal()]++;
+                    }
+                },
+                (left, right) -> {
+                    for (int i = 0; i < left.length; i++) {
+                        left[i] += right[i];
+                    }
+                    return left;
+                },
+                counts -> {
+                    Map<CarsSet.CarType, Long> result = new EnumMap<>(CarsSet.CarType.class);
+                    for (CarsSet.CarType carType : CAR_TYPES) {
+                        if (counts[carType.ordinal()] > 0) {
+                            result.put(carType, counts[carType.ordinal()]);
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    /**
+     * Collects the cars grouped by car type.
+     *
+     * @return a collector whose result maps every CarType to the Set of its cars
+     */
+    public static Collector<CarsSet, ?, Map<CarsSet.CarType, Set<CarsSet>>> carsByCarTypes() {
+        return Collector.<CarsSet, Map<CarsSet.CarType, Set<CarsSet>>>of(
+                () -> {
+                    Map<CarsSet.CarType, Set<CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+                    for (CarsSet.CarType carType : CAR_TYPES) {
+                        result.put(carType, new HashSet<>());
+                    }
+                    return result;
+                },
+                (result, car) -> {
+                    if (car.getCartype() != null) {
+                        result.get(car.getCartype()).add(car);
+                    }
+                },
+                (left, right) -> {
+                    // Keep the first occurrence of equal cars, as a sequential scan does
+                    right.forEach((carType, cars) -> left.get(carType).addAll(cars));
+                    return left;
+                });
+    }
+
+    /**
+     * Collects the cars grouped by car type and then keyed by code.
+     *
+     * @return a collector whose result maps each occurring CarType to its cars sorted by code
+     */
+    public static Collector<CarsSet, ?, Map<CarsSet.CarType, Map<String, CarsSet>>> carsByCarTypeAndCodes() {
+        return Collector.<CarsSet, Map<CarsSet.CarType, Map<String, CarsSet>>>of(
+                () -> new EnumMap<>(CarsSet.CarType.class),
+                (result, car) -> {
+                    if (car.getCartype() != null) {
+                        result.computeIfAbsent(car.getCartype(), carType -> new TreeMap<>()).put(car.getCode(), car);
+                    }
+                },
+                (left, right) -> {
+                    // Later cars replace earlier ones with the same code, as a sequential scan does
+                    right.forEach((carType, cars) ->
+                            left.computeIfAbsent(carType, type -> new TreeMap<>()).putAll(cars));
+                    return left;
+                });
+    }
+
+    /**
+     * A run of cars that is sorted by price on demand and merged stably with the run that follows it.
+     */
+    private static final class SortedRun {
+        private List<CarsSet> cars = new ArrayList<>();
+        private boolean sorted = true;
+
+        private void add(CarsSet car) {
+            cars.add(car);
+            sorted = false;
+        }
+
+        private SortedRun merge(SortedRun next) {
+            sort();
+            next.sort();
+
+            // Take from this run on ties, since it precedes the next one
+            List<CarsSet> merged = new ArrayList<>(cars.size() + next.cars.size());
+            int i = 0;
+            int j = 0;
+            while (i < cars.size() && j < next.cars.size()) {
+                if (PRICE_DESC.compare(next.cars.get(j), cars.get(i)) < 0) {
+                    merged.add(next.cars.get(j++));
+                } else {
+                    merged.add(cars.get(i++));
+                }
+            }
+            merged.addAll(cars.subList(i, cars.size()));
+            merged.addAll(next.cars.subList(j, next.cars.size()));
+            cars = merged;
+            return this;
+        }
+
+        private List<CarsSet> finish() {
+            sort();
+            return cars;
+        }
+
+        private void sort() {
+            if (!sorted) {
+                cars.sort(PRICE_DESC);
+                sorted = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package cars;
+
+import base.Repository;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * The CarExporter class writes cars to an {@link OutputStream} or a {@link WritableByteChannel}
+ * as JSON Lines, CSV or a JSON array in the format of {@code data.json}.
+ * Instances are immutable and created through {@link #builder(Format)}; they can be shared between threads.
+ *
+ * <p>Every value is encoded straight into one reusable buffer, which is written out whenever it fills up,
+ * so an export allocates no string per car or per field and runs in constant memory whatever the number of cars.
+ *
+ * <p><strong>Formats:</strong>
+ * <ul>
+ *     <li><code>JSON_LINES</code>: One JSON object per car, each on its own line.</li>
+ *     <li><code>CSV</code>: A header row, then one row per specification of each car, repeating the columns
+ *         of the car, or a single row with empty specification columns for a car without specifications.
+ *         Rows end with CRLF and fields are quoted as RFC 4180 requires.</li>
+ *     <li><code>JSON_ARRAY</code>: One JSON array holding every car, which {@link CarSetRepository} can load.</li>
+ * </ul>
+ */
+public final class CarExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SHORT_ESCAPES = shortEscapes();
+    private static final byte[][] CAR_TYPE_NAMES = carTypeNames();
+    private static final byte[] CSV_HEADER = ascii("code,name,year,cartype,price");
+    private static final byte[] CSV_SPECIFICATIONS_HEADER = ascii(",specification_id,specification_name,power_hp,weight_in_kg");
+
+    private final Format format;
+    private final Predicate<? super CarsSet> filter;
+    private final boolean specifications;
+
+    private CarExporter(final Builder builder) {
+        this.format = builder.format;
+        this.filter = builder.filter;
+        this.specifications = builder.specifications;
+    }
+
+    /**
+     * Creates a builder for an exporter that writes every car with its specifications.
+     *
+     * @param format the output format
+     * @return a new builder
+     */
+    public static Builder builder(@NonNull final Format format) {
+        return new Builder(format);
+    }
+
+    /**
+     * Writes cars to a stream.
+     *
+     * @param cars the cars, in the order to write them
+     * @param out the destination, which is flushed but not closed
+     * @return the number of cars written
+     * @throws IOException if an I/O error happens
+     */
+    public long export(@NonNull final Iterable<CarsSet> cars, @NonNull final OutputStream out) throws IOException {
+        long count = write(cars, new Output(out::write));
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Writes cars to a channel.
+     *
+     * @param cars the cars, in the order to write them
+     * @param channel the destination, which is not closed
+     * @return the number of cars written
+     * @throws IOException if an I/O error happens
+     */
+    public long export(@NonNull final Iterable<CarsSet> cars, @NonNull final WritableByteChannel channel)
+            throws IOException {
+        return write(cars, new Output((bytes, offset, length) -> {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }));
+    }
+
+    private long write(final Iterable<CarsSet> cars, final Output out) throws IOException {
+        long count = 0;
+        if (format == Format.CSV) {
+            out.raw(CSV_HEADER);
+            if (specifications) {
+                out.raw(CSV_SPECIFICATIONS_HEADER);
+            }
+            out.ascii('\r');
+            out.ascii('\n');
+        } else if (format == Format.JSON_ARRAY) {
+            out.ascii('[');
+        }
+        for (CarsSet car : cars) {
+            if (filter != null && !filter.test(car)) {
+                continue;
+            }
+            switch (format) {
+                case CSV:
+                    writeCsv(car, out);
+                    break;
+                case JSON_ARRAY:
+                    if (count > 0) {
+                        out.ascii(',');
+                    }
+                    out.ascii('\n');
+                    writeJson(car, out);
+                    break;
+                case JSON_LINES:
+                default:
+                    writeJson(car, out);
+                    out.ascii('\n');
+                    break;
+            }
+            count++;
+        }
+        if (format == Format.JSON_ARRAY) {
+            if (count > 0) {
+                out.ascii('\n');
+            }
+            out.ascii(']');
+            out.ascii('\n');
+        }
+        out.flush();
+        return count;
+    }
+
+    private void writeJson(final CarsSet car, final Output out) throws IOException {
+        out.raw(Json.CODE);
+        out.jsonString(car.getCode());
+        out.raw(Json.NAME);
+        out.jsonString(car.getName());
+        out.raw(Json.YEAR);
+        out.number(car.getYear());
+        out.raw(Json.CAR_TYPE);
+        if (car.getCartype() == null) {
+            out.raw(Json.NULL);
+        } else {
+            out.ascii('"');
+            out.raw(CAR_TYPE_NAMES[car.getCartype().ordinal()]);
+            out.ascii('"');
+        }
+        out.raw(Json.PRICE);
+        out.number(car.getPrice());
+        if (specifications) {
+            out.raw(Json.SPECIFICATIONS);
+            if (car.getSpecifications() == null) {
+                out.raw(Json.NULL);
+            } else {
+                out.ascii('[');
+                boolean first = true;
+                for (CarsSet.Specifications spec : car.getSpecifications()) {
+                    if (!first) {
+                        out.ascii(',');
+                    }
+                    first = false;
+                    out.raw(Json.ID);
+                    out.jsonString(spec.getId());
+                    out.raw(Json.NAME);
+                    out.jsonString(spec.getName());
+                    out.raw(Json.POWER_HP);
+                    out.number(spec.getPower_hp());
+                    out.raw(Json.WEIGHT_IN_KG);
+                    out.number(spec.getWeight_in_kg());
+                    out.ascii('}');
+                }
+                out.ascii(']');
+            }
+        }
+        out.ascii('}');
+    }
+
+    private void writeCsv(final CarsSet car, final Output out) throws IOException {
+        if (!specifications || car.getSpecifications() == null || car.getSpecifications().isEmpty()) {
+            writeCsvCar(car, out);
+            if (specifications) {
+                out.raw(Csv.NO_SPECIFICATION);
+            }
+            out.ascii('\r');
+            out.ascii('\n');
+            return;
+        }
+        for (CarsSet.Specifications spec : car.getSpecifications()) {
+            writeCsvCar(car, out);
+            out.ascii(',');
+            out.csvString(spec.getId());
+            out.ascii(',');
+            out.csvString(spec.getName());
+            out.ascii(',');
+            out.number(spec.getPower_hp());
+            out.ascii(',');
+            out.number(spec.getWeight_in_kg());
+            out.ascii('\r');
+            out.ascii('\n');
+        }
+    }
+
+    private static void writeCsvCar(final CarsSet car, final Output out) throws IOException {
+        out.csvString(car.getCode());
+        out.ascii(',');
+        out.csvString(car.getName());
+        out.ascii(',');
+        out.number(car.getYear());
+        out.ascii(',');
+        if (car.getCartype() != null) {
+            out.raw(CAR_TYPE_NAMES[car.getCartype().ordinal()]);
+        }
+        out.ascii(',');
+        out.number(car.getPrice());
+    }
+
+    /**
+     * Returns the name of every car type as it appears in {@code data.json}, which needs no escaping.
+     */
+    private static byte[][] carTypeNames() {
+        CarsSet.CarType[] carTypes = CarsSet.CarType.values();
+        byte[][] names = new byte[carTypes.length][];
+        for (CarsSet.CarType carType : carTypes) {
+            names[carType.ordinal()] = ascii(Repository.MAPPER.convertValue(carType, String.class));
+        }
+        return names;
+    }
+
+    /**
+     * Returns the letter of the two-character escape of each control character that has one, 0 otherwise.
+     */
+    private static byte[] shortEscapes() {
+        byte[] escapes = new byte[0x20];
+        escapes['\b'] = 'b';
+        escapes['\t'] = 't';
+        escapes['\n'] = 'n';
+        escapes['\f'] = 'f';
+        escapes['\r'] = 'r';
+        return escapes;
+    }
+
+    private static byte[] ascii(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The output formats.
+     */
+    public enum Format {
+        JSON_LINES,
+        CSV,
+        JSON_ARRAY
+    }
+
+    /**
+     * Collects the options of an exporter.
+     */
+    public static final class Builder {
+        private final Format format;
+        private Predicate<? super CarsSet> filter;
+        private boolean specifications = true;
+
+        private Builder(final Format format) {
+            this.format = format;
+        }
+
+        /**
+         * Only writes the cars accepted by a predicate, for instance {@code query::matches} of a {@link CarQuery}.
+         * Calling it again replaces the previous predicate.
+         *
+         * @param filter the predicate
+         * @return this builder
+         */
+        public Builder filter(@NonNull final Predicate<? super CarsSet> filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        /**
+         * Sets whether the specifications of the cars are written.
+         *
+         * @param specifications false to only write the attributes of the cars
+         * @return this builder
+         */
+        public Builder specifications(final boolean specifications) {
+            this.specifications = specifications;
+            return this;
+        }
+
+        /**
+         * Creates the exporter.
+         *
+         * @return the exporter
+         */
+        public CarExporter build() {
+            return new CarExporter(this);
+        }
+    }
+
+    /**
+     * The constant parts of the JSON objects, in the field order of {@code data.json}.
+     */
+    private static final class Json {
+        private static final byte[] CODE = ascii("{\"code\":");
+        private static final byte[] NAME = ascii(",\"name\":");
+        private static final byte[] YEAR = ascii(",\"year\":");
+        private static final byte[] CAR_TYPE = ascii(",\"cartype\":");
+        private static final byte[] PRICE = ascii(",\"price\":");
+        private static final byte[] SPECIFICATIONS = ascii(",\"specifications\":");
+        private static final byte[] ID = ascii("{\"id\":");
+        private static final byte[] POWER_HP = ascii(",\"power_hp\":");
+        private static final byte[] WEIGHT_IN_KG = ascii(",\"weight_in_kg\":");
+        private static final byte[] NULL = ascii("null");
+    }
+
+    /**
+     * The constant parts of the CSV rows.
+     */
+    private static final class Csv {
+        private static final byte[] NO_SPECIFICATION = ascii(",,,,");
+    }
+
+    /**
+     * Receives the filled part of the buffer.
+     */
+    @FunctionalInterface
+    private interface Sink {
+        void write(byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Encodes values as UTF-8 into a buffer that is handed to the sink whenever it fills up.
+     */
+    private static final class Output {
+        private final Sink sink;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+
+        private Output(final Sink sink) {
+            this.sink = sink;
+        }
+
+        private void ascii(final char c) throws IOException {
+            if (position == buffer.length) {
+                flush();
+            }
+            buffer[position++] = (byte) c;
+        }
+
+        private void raw(final byte[] bytes) throws IOException {
+            if (position + bytes.length > buffer.length) {
+                flush();
+            }
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        private void number(final int value) throws IOException {
+            // An int has at most ten digits and a sign
+            if (position + 11 > buffer.length) {
+                flush();
+            }
+            long v = value;
+            if (v < 0) {
+                buffer[position++] = '-';
+                v = -v;
+            }
+            int digits = 1;
+            for (long rest = v / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            for (int i = position + digits - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + v % 10);
+                v /= 10;
+            }
+            position += digits;
+        }
+
+        private void jsonString(final String value) throws IOException {
+            if (value == null) {
+                raw(Json.NULL);
+                return;
+            }
+            ascii('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                // The longest encoding of one char is a \\u escape
+                if (position + 6 > buffer.length) {
+                    flush();
+                }
+                if (c == '"' || c == '\\') {
+                    buffer[position++] = '\\';
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x20 && SHORT_ESCAPES[c] != 0) {
+                    buffer[position++] = '\\';
+                    buffer[position++] = SHORT_ESCAPES[c];
+                } else if (c < 0x20 || Character.isSurrogate(c) && !isPair(value, i)) {
+                    // Other control characters and lone surrogates, which have no UTF-8 encoding, are escaped
+                    buffer[position++] = '\\';
+                    buffer[position++] = 'u';
+                    buffer[position++] = HEX[c >> 12];
+                    buffer[position++] = HEX[c >> 8 & 0xF];
+                    buffer[position++] = HEX[c >> 4 & 0xF];
+                    buffer[position++] = HEX[c & 0xF];
+                } else {
+                    i = utf8(value, i, c);
+                }
+            }
+            ascii('"');
+        }
+
+        private void csvString(final String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quoted = false;
+            for (int i = 0; i < value.length() && !quoted; i++) {
+                char c = value.charAt(i);
+                quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+            }
+            if (quoted) {
+                ascii('"');
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (position + 4 > buffer.length) {
+                    flush();
+                }
+                if (c == '"') {
+                    buffer[position++] = '"';
+                    buffer[position++] = '"';
+                } else {
+                    i = utf8(value, i, c);
+                }
+            }
+            if (quoted) {
+                ascii('"');
+            }
+        }
+
+        /**
+         * Encodes the char at an index as UTF-8, together with the next one if they form a surrogate pair.
+         * The buffer has room for four bytes.
+         *
+         * @return the index of the last char encoded
+         */
+        private int utf8(final String value, final int index, final char c) {
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (isPair(value, index)) {
+                int codePoint = Character.toCodePoint(c, value.charAt(index + 1));
+                buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+                return index + 1;
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate has no UTF-8 encoding; String.getBytes writes '?' as well
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+            return index;
+        }
+
+        /**
+         * Tells whether the char at an index starts a surrogate pair.
+         */
+        private static boolean isPair(final String value, final int index) {
+            return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(index + 1));
+        }
+
+        private void flush() throws IOException {
+            if (position > 0) {
+                sink.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package cars;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The CarQuery class describes an ad hoc query over the cars of a {@link CarSetRepository}:
+ * filters combined with AND, an optional order and an optional limit.
+ * Instances are immutable and created through {@link #builder()}; unset filters accept every car.
+ *
+ * <p><strong>Filters:</strong>
+ * <ul>
+ *     <li><code>carTypes</code>: The car types to keep.</li>
+ *     <li><code>year</code>, <code>price</code>: Closed ranges on the attributes of the car.</li>
+ *     <li><code>powerHp</code>, <code>weightKg</code>: Closed ranges on the specifications of the car,
+ *         which one single specification has to satisfy together.</li>
+ *     <li><code>where</code>: Any other predicate, evaluated last on the cars that passed every range.</li>
+ * </ul>
+ *
+ * <p>For example, SUVs from 2020 onward under 80,000 with over 400 hp, cheapest first:
+ * <pre>{@code
+ * CarQuery.builder()
+ *         .carTypes(CarsSet.CarType.SUV)
+ *         .yearBetween(2020, Integer.MAX_VALUE)
+ *         .priceBetween(Integer.MIN_VALUE, 79_999)
+ *         .powerHpBetween(401, Integer.MAX_VALUE)
+ *         .orderBy(CarQuery.Order.PRICE_ASC)
+ *         .limit(10)
+ *         .build();
+ * }</pre>
+ */
+public final class CarQuery {
+    private final Set<CarsSet.CarType> carTypes;
+    private final int minYear;
+    private final int maxYear;
+    private final int minPrice;
+    private final int maxPrice;
+    private final int minPowerHp;
+    private final int maxPowerHp;
+    private final int minWeightKg;
+    private final int maxWeightKg;
+    private final Predicate<? super CarsSet> where;
+    private final Order order;
+    private final int limit;
+
+    private CarQuery(final Builder builder) {
+        this.carTypes = builder.carTypes == null ? null : EnumSet.copyOf(builder.carTypes);
+        this.minYear = builder.minYear;
+        this.maxYear = builder.maxYear;
+        this.minPrice = builder.minPrice;
+        this.maxPrice = builder.maxPrice;
+        this.minPowerHp = builder.minPowerHp;
+        this.maxPowerHp = builder.maxPowerHp;
+        this.minWeightKg = builder.minWeightKg;
+        this.maxWeightKg = builder.maxWeightKg;
+        this.where = builder.where;
+        this.order = builder.order;
+        this.limit = builder.limit;
+    }
+
+    /**
+     * Creates a builder for a query that accepts every car.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the order of the results.
+     *
+     * @return the order, or {@code null} if the results come in no particular order
+     */
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the highest number of results.
+     *
+     * @return the limit, or {@link Integer#MAX_VALUE} if there is none
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Tests whether a car satisfies every filter of this query.
+     *
+     * @param car the car to test
+     * @return true if the car matches
+     */
+    public boolean matches(@NonNull final CarsSet car) {
+        if (!matchesCar(car.getYear(), car.getPrice(), car.getCartype())) {
+            return false;
+        }
+        if (hasSpecificationRanges()) {
+            boolean any = false;
+            if (car.getSpecifications() != null) {
+                for (CarsSet.Specifications spec : car.getSpecifications()) {
+                    if (matchesSpecification(spec.getPower_hp(), spec.getWeight_in_kg())) {
+                        any = true;
+                        break;
+                    }
+                }
+            }
+            if (!any) {
+                return false;
+            }
+        }
+        return where == null || where.test(car);
+    }
+
+    /**
+     * Tests the filters on the attributes of a car, which a store can read without materializing it.
+     */
+    boolean matchesCar(final int year, final int price, final CarsSet.CarType carType) {
+        return year >= minYear && year <= maxYear
+                && price >= minPrice && price <= maxPrice
+                && (carTypes == null || carType != null && carTypes.contains(carType));
+    }
+
+    /**
+     * Tests the filters on one specification of a car.
+     */
+    boolean matchesSpecification(final int powerHp, final int weightKg) {
+        return powerHp >= minPowerHp && powerHp <= maxPowerHp
+                && weightKg >= minWeightKg && weightKg <= maxWeightKg;
+    }
+
+    boolean hasSpecificationRanges() {
+        return minPowerHp != Integer.MIN_VALUE || maxPowerHp != Integer.MAX_VALUE
+                || minWeightKg != Integer.MIN_VALUE || maxWeightKg != Integer.MAX_VALUE;
+    }
+
+    boolean hasPriceRange() {
+        return minPrice != Integer.MIN_VALUE || maxPrice != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the car types to keep, or {@code null} if every car type is kept.
+     */
+    Set<CarsSet.CarType> getCarTypes() {
+        return carTypes;
+    }
+
+    int getMinPrice() {
+        return minPrice;
+    }
+
+    int getMaxPrice() {
+        return maxPrice;
+    }
+
+    Predicate<? super CarsSet> getWhere() {
+        return where;
+    }
+
+    /**
+     * The Order enum lists the orders a query can return its results in.
+     * Cars that compare equal keep their load order.
+     */
+    public enum Order {
+        /**
+         * Cheapest first.
+         */
+        PRICE_ASC(Comparator.comparingInt(CarsSet::getPrice)),
+
+        /**
+         * Most expensive first.
+         */
+        PRICE_DESC((o1, o2) -> -Integer.compare(o1.getPrice(), o2.getPrice())),
+
+        /**
+         * Oldest first.
+         */
+        YEAR_ASC(Comparator.comparingInt(CarsSet::getYear)),
+
+        /**
+         * Newest first.
+         */
+        YEAR_DESC((o1, o2) -> -Integer.compare(o1.getYear(), o2.getYear())),
+
+        /**
+         * By code in ascending order.
+         */
+        CODE(Comparator.comparing(CarsSet::getCode, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        private final Comparator<CarsSet> comparator;
+
+        Order(final Comparator<CarsSet> comparator) {
+            this.comparator = comparator;
+        }
+
+        Comparator<CarsSet> comparator() {
+            return comparator;
+        }
+    }
+
+    /**
+     * Builds {@link CarQuery} instances. Each range is closed; a bound of {@link Integer#MIN_VALUE} or
+     * {@link Integer#MAX_VALUE} leaves that side open.
+     */
+    public static final class Builder {
+        private Set<CarsSet.CarType> carTypes;
+        private int minYear = Integer.MIN_VALUE;
+        private int maxYear = Integer.MAX_VALUE;
+        private int minPrice = Integer.MIN_VALUE;
+        private int maxPrice = Integer.MAX_VALUE;
+        private int minPowerHp = Integer.MIN_VALUE;
+        private int maxPowerHp = Integer.MAX_VALUE;
+        private int minWeightKg = Integer.MIN_VALUE;
+        private int maxWeightKg = Integer.MAX_VALUE;
+        private Predicate<? super CarsSet> where;
+        private Order order;
+        private int limit = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * Keeps the cars of the given types only.
+         *
+         * @param carTypes the car types to keep
+         * @return this builder
+         */
+        public Builder carTypes(@NonNull final CarsSet.CarType... carTypes) {
+            return carTypes(Arrays.asList(carTypes));
+        }
+
+        /**
+         * Keeps the cars of the given types only.
+         *
+         * @param carTypes the car types to keep
+         * @return this builder
+         */
+        public Builder carTypes(@NonNull final Collection<CarsSet.CarType> carTypes) {
+            this.carTypes = carTypes.isEmpty() ? EnumSet.noneOf(CarsSet.CarType.class) : EnumSet.copyOf(carTypes);
+            return this;
+        }
+
+        /**
+         * Keeps the cars manufactured within a range of years.
+         *
+         * @param min the earliest year to keep
+         * @param max the latest year to keep
+         * @return this builder
+         */
+        public Builder yearBetween(final int min, final int max) {
+            this.minYear = min;
+            this.maxYear = max;
+            return this;
+        }
+
+        /**
+         * Keeps the cars whose price lies within a range.
+         *
+         * @param min the lowest price to keep
+         * @param max the highest price to keep
+         * @return this builder
+         */
+        public Builder priceBetween(final int min, final int max) {
+            this.minPrice = min;
+            this.maxPrice = max;
+            return this;
+        }
+
+        /**
+         * Keeps the cars having a specification whose power lies within a range.
+         *
+         * @param min the lowest power to keep, in horsepower
+         * @param max the highest power to keep, in horsepower
+         * @return this builder
+         */
+        public Builder powerHpBetween(final int min, final int max) {
+            this.minPowerHp = min;
+            this.maxPowerHp = max;
+            return this;
+        }
+
+        /**
+         * Keeps the cars having a specification whose weight lies within a range.
+         *
+         * @param min the lowest weight to keep, in kilograms
+         * @param max the highest weight to keep, in kilograms
+         * @return this builder
+         */
+        public Builder weightKgBetween(final int min, final int max) {
+            this.minWeightKg = min;
+            this.maxWeightKg = max;
+            return this;
+        }
+
+        /**
+         * Keeps the cars that also satisfy a predicate. Calling it again combines both predicates with AND.
+         *
+         * @param predicate the predicate to satisfy
+         * @return this builder
+         */
+        public Builder where(@NonNull final Predicate<? super CarsSet> predicate) {
+            Predicate<? super CarsSet> previous = this.where;
+            this.where = previous == null ? predicate : car -> previous.test(car) && predicate.test(car);
+            return this;
+        }
+
+        /**
+         * Sorts the results.
+         *
+         * @param order the order of the results, or {@code null} for no particular order
+         * @return this builder
+         */
+        public Builder orderBy(final Order order) {
+            this.order = order;
+            return this;
+        }
+
+        /**
+         * Returns the first results only.
+         *
+         * @param limit the highest number of results
+         * @return this builder
+         * @throws IllegalArgumentException if limit is negative
+         */
+        public Builder limit(final int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit must not be negative: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Builds the query.
+         *
+         * @return the query
+         */
+        public CarQuery build() {
+            return new CarQuery(this);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package cars;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The CarRecord class is a reusable flyweight over one row of a {@link MappedCarStore}.
+ * It exposes the getters of {@link CarsSet}, reading each value from the buffer on demand,
+ * and is moved from row to row with {@link #moveTo(int)} instead of allocating an object per car.
+ *
+ * <p>Numeric getters never allocate. String getters decode the dictionary entry on each call, and
+ * specifications are read one at a time by their index within the row.
+ * A record is not thread-safe; each query uses its own.
+ */
+final class CarRecord {
+    private static final CarsSet.CarType[] CAR_TYPES = CarsSet.CarType.values();
+
+    private final MappedCarStore store;
+    private final ByteBuffer buffer;
+    private int row = -1;
+    private int position;
+
+    /**
+     * Creates a record that is not positioned on any row yet.
+     *
+     * @param store the store to read from
+     */
+    CarRecord(final MappedCarStore store) {
+        this.store = store;
+        this.buffer = store.image();
+    }
+
+    /**
+     * Positions this record on a row.
+     *
+     * @param row the row number
+     * @return this record
+     */
+    CarRecord moveTo(final int row) {
+        this.row = row;
+        this.position = store.rowPosition(row);
+        return this;
+    }
+
+    int getRow() {
+        return row;
+    }
+
+    int getCodeId() {
+        return buffer.getInt(position);
+    }
+
+    String getCode() {
+        return store.string(getCodeId());
+    }
+
+    int getNameId() {
+        return buffer.getInt(position + 4);
+    }
+
+    String getName() {
+        return store.string(getNameId());
+    }
+
+    int getYear() {
+        return buffer.getInt(position + 8);
+    }
+
+    int getPrice() {
+        return buffer.getInt(position + 12);
+    }
+
+    CarsSet.CarType getCartype() {
+        byte ordinal = buffer.get(position + 22);
+        return ordinal == ColumnarCarStore.NULL_ID ? null : CAR_TYPES[ordinal];
+    }
+
+    int getSpecificationCount() {
+        return Short.toUnsignedInt(buffer.getShort(position + 20));
+    }
+
+    String getSpecificationId(final int index) {
+        return store.string(buffer.getInt(specPosition(index)));
+    }
+
+    int getSpecificationNameId(final int index) {
+        return buffer.getInt(specPosition(index) + 4);
+    }
+
+    String getSpecificationName(final int index) {
+        return store.string(getSpecificationNameId(index));
+    }
+
+    int getSpecificationPower_hp(final int index) {
+        return buffer.getInt(specPosition(index) + 8);
+    }
+
+    int getSpecificationWeight_in_kg(final int index) {
+        return buffer.getInt(specPosition(index) + 12);
+    }
+
+    /**
+     * Builds the specifications of the current row.
+     *
+     * @return a new Set of Specifications instances
+     */
+    Set<CarsSet.Specifications> getSpecifications() {
+        Set<CarsSet.Specifications> specifications = new HashSet<>();
+        for (int i = 0; i < getSpecificationCount(); i++) {
+            specifications.add(new CarsSet.Specifications(
+                    getSpecificationId(i), getSpecificationName(i),
+                    getSpecificationPower_hp(i), getSpecificationWeight_in_kg(i)));
+        }
+        return specifications;
+    }
+
+    /**
+     * Copies the current row into a new CarsSet object.
+     *
+     * @return a new CarsSet instance holding the values of the row
+     */
+    CarsSet toCarsSet() {
+        CarsSet car = new CarsSet();
+        car.setCode(getCode());
+        car.setName(getName());
+        car.setYear(getYear());
+        car.setCartype(getCartype());
+        car.setPrice(getPrice());
+        car.setSpecifications(getSpecifications());
+        return car;
+    }
+
+    private int specPosition(final int index) {
+        Objects.checkIndex(index, getSpecificationCount());
+        return store.specPosition(buffer.getInt(position + 16) + index);
+    }
+}
@@ -1,138 +1,826 @@
 package cars;
+import base.Aggregate;
+import base.Change;
+import base.Instrumentation;
+import base.JsonStreamLoader;
 import base.Queries;
 import base.Repository;
+import base.Snapshot;
+import base.StringDictionary;
 import lombok.NonNull;
 
 import java.io.IOException;
-import java.util.*;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * The CarSetRepository class serves as a repository for managing sets of CarsSet objects.
  * It extends the Repository class and implements various querying functionalities for CarsSet instances
  * based on specifications and car types.
+ * The queries are answered by the storage engine selected in {@link RepositoryConfig#getStorage()},
+ * through secondary indexes on code, car type and price unless {@link RepositoryConfig#isIndexed()} is turned off.
+ * With indexes, the grouped query results are unmodifiable views, shared between calls unless the storage is
+ * {@link RepositoryConfig.Storage#COLUMNAR}.
+ * The highest price and the counts per car type are {@link Aggregate}s maintained by every commit,
+ * so those two queries never scan; further aggregates can be added with {@link #register(Aggregate)}.
+ *
+ * <p>Cars are keyed by their code for {@link #put}, {@link #update} and {@link #remove}.
+ * The storage engine and its indexes belong to a snapshot: queries always run against the latest committed
+ * version, and a new version builds them again on its first query.
+ * With {@link RepositoryConfig.Storage#MAPPED} storage the cars stay outside of the heap, in a snapshot file
+ * opened with {@link #open} or {@link #load}, or in a direct buffer otherwise;
+ * each write to such a repository copies the whole catalog through the heap into a new buffer.
+ * Stored cars must be treated as immutable; change them through {@code update} with a copy such as
+ * {@code car.toBuilder().price(price).build()}.
  *
  */
+// Query timers are only opened and closed, so the try-with-resources blocks never reference them
+@SuppressWarnings("try")
 public class CarSetRepository extends Repository<CarsSet>
         implements Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType> {
+    private static final Object STORE = new Object();
+    private static final Object VIEW = new Object();
+    private static final Object PRICE_ORDER = new Object();
+    private static final Object SPEC_TABLE = new Object();
+
+    private final RepositoryConfig config;
+    private final long deduplicatedBytes;
+    private final Instrumentation instrumentation;
+    private final Aggregate<CarsSet, OptionalInt> highestPrice = CarAggregates.highestPrice();
+    private final Aggregate<CarsSet, Map<CarsSet.CarType, Long>> countByCarType = CarAggregates.countByCarType();
+
     /**
      * A constructor for initializing the repository.
      *
-     * @throws IOException if an I/O error happens
+     * @throws IOException if an I/O error happens or a car has no code
+     * @throws IllegalArgumentException if two cars share a code
      */
     public CarSetRepository() throws IOException {
-        super(CarsSet.class);
+        this(RepositoryConfig.DEFAULT);
     }
 
-    @Override
-    public long getHighestPrice() {
-        // Retrieve all CarsSet objects from the repository
-        List<CarsSet> cars = getAll();
-
-        // Initialize the maximum price with the first CarsSet object's price
-        long max = cars.get(0).getPrice();
-
-        // Iterate through the list to find the highest price
-        for (int i = 1; i < cars.size(); i++) {
-            // Compare the price of each CarsSet object with the current maximum price
-            if(cars.get(i).getPrice() > max ){
-                // If a higher price is found, update the maximum price
-                max = cars.get(i).getPrice();
+    /**
+     * A constructor for loading the bundled data in streaming mode.
+     *
+     * @param config the options used while loading
+     * @throws IOException if an I/O error happens or a car has no code
+     * @throws IllegalArgumentException if two cars share a code
+     */
+    public CarSetRepository(@NonNull final RepositoryConfig config) throws IOException {
+        this(defaultSource(), config);
+    }
+
+    /**
+     * A constructor for loading a JSON array of cars in streaming mode.
+     *
+     * @param json the JSON source, closed when loading finishes
+     * @param config the options used while loading
+     * @throws IOException if an I/O error happens or a car has no code
+     * @throws IllegalArgumentException if two cars share a code
+     */
+    public CarSetRepository(
+            @NonNull final InputStream json,
+            @NonNull final RepositoryConfig config) throws IOException {
+        this(json, config, new StringDictionary(), new Instrumentation(config.isInstrumented()));
+    }
+
+    private CarSetRepository(
+            final InputStream json,
+            final RepositoryConfig config,
+            final StringDictionary dictionary,
+            final Instrumentation instrumentation) throws IOException {
+        // The arguments are evaluated in order, so the savings are read once loading is done
+        this(config, loadRows(json, config, dictionary, instrumentation), dictionary.getSavedBytes(), instrumentation);
+    }
+
+    /**
+     * A constructor for initializing the repository with cars that are already in memory.
+     *
+     * @param cars the cars to store
+     * @param config the options of the repository
+     * @throws IllegalArgumentException if a car has no code or two cars share one
+     */
+    public CarSetRepository(
+            @NonNull final Collection<? extends CarsSet> cars,
+            @NonNull final RepositoryConfig config) {
+        this(config, seal(new ArrayList<>(cars), config), 0, new Instrumentation(config.isInstrumented()));
+    }
+
+    /**
+     * Opens a repository from a JSON file, through its binary snapshot whenever that snapshot is up to date.
+     * A missing, stale or corrupt snapshot is ignored: the JSON file is parsed instead and the snapshot rewritten,
+     * so the next start takes the fast path. The snapshot is not rewritten if the JSON file changed while it was parsed.
+     *
+     * @param json the JSON file, which stays the source of truth
+     * @param snapshot the binary snapshot file kept alongside it
+     * @param config the options of the repository
+     * @return the repository holding the cars of the JSON file
+     * @throws IOException if the JSON file cannot be read, holds a car without a code,
+     *                     or the snapshot cannot be written
+     * @throws IllegalArgumentException if two cars of the JSON file share a code
+     */
+    public static CarSetRepository open(
+            @NonNull final Path json,
+            @NonNull final Path snapshot,
+            @NonNull final RepositoryConfig config) throws IOException {
+        if (Files.exists(snapshot)) {
+            try {
+                return fromSnapshot(snapshot, json, config);
+            } catch (IOException stale) {
+                // Fall through to JSON, which rewrites the snapshot
             }
         }
-        // Return the highest price found among CarsSet objects in the repository
-        return max;
+
+        // Save what was parsed rather than re-reading the file, under the version seen before parsing began
+        long[] fingerprint = BinarySnapshot.fingerprint(json);
+        CarSetRepository repository = new CarSetRepository(Files.newInputStream(json), config);
+        if (Arrays.equals(fingerprint, BinarySnapshot.fingerprint(json))) {
+            BinarySnapshot.write(repository.getAll(), fingerprint, snapshot);
+        }
+        return repository;
     }
 
-    @Override
-    public Set<String> getCarsName() {
-        // Initialize a Set to store unique names of CarsSet objects
-        Set<String> names = new HashSet<>();
+    /**
+     * Loads a repository from a binary snapshot file written by {@link #save(Path)}.
+     *
+     * @param snapshot the binary snapshot file
+     * @param config the options of the repository
+     * @return the repository holding the cars of the snapshot
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public static CarSetRepository load(
+            @NonNull final Path snapshot,
+            @NonNull final RepositoryConfig config) throws IOException {
+        return fromSnapshot(snapshot, null, config);
+    }
 
-        // Iterate through all CarsSet objects in the repository
-        for (CarsSet carsSet : getAll()){
-            // Add the name of each CarsSet object to the Set
-            names.add(carsSet.getName());
+    private static CarSetRepository fromSnapshot(
+            final Path snapshot,
+            final Path source,
+            final RepositoryConfig config) throws IOException {
+        Instrumentation instrumentation = new Instrumentation(config.isInstrumented());
+        long start = System.nanoTime();
+        List<CarsSet> rows = rows(snapshot, source, config);
+        instrumentation.recordLoad(rows.size(), Files.size(snapshot), System.nanoTime() - start);
+        try {
+            return new CarSetRepository(config, rows, 0, instrumentation);
+        } catch (IllegalArgumentException e) {
+            // A snapshot is only written from a valid repository, so cars without a unique code mean it is corrupt
+            throw new IOException("Invalid snapshot " + snapshot + ": " + e.getMessage(), e);
         }
-        // Return the Set containing unique names of CarsSet instances
-        return names;
     }
 
-    @Override
-    public List<CarsSet> getCarsOrderByPriceDesc() {
-        // Retrieve all CarsSet objects from the repository and store them in a new ArrayList
-        List<CarsSet> cars = new ArrayList<>(getAll());
+    // Only the final snapshot() and register() of Repository see this, and every field is assigned before them
+    @SuppressWarnings("this-escape")
+    private CarSetRepository(
+            final RepositoryConfig config,
+            final List<CarsSet> rows,
+            final long deduplicatedBytes,
+            final Instrumentation instrumentation) {
+        super(rows);
+        this.config = config;
+        this.deduplicatedBytes = deduplicatedBytes;
+        this.instrumentation = instrumentation;
 
-        // Sort the list of CarsSet objects based on price in descending order using a custom Comparator
-        cars.sort(new Comparator<CarsSet>() {
-            @Override
-            public int compare(CarsSet o1, CarsSet o2) {
-                // Compare prices in descending order using Integer.compare
-                return -Integer.compare(o1.getPrice(), o2.getPrice());
+        // Build the storage engine and its indexes of the initial version right away
+        store(snapshot(), config);
+        register(highestPrice);
+        register(countByCarType);
+    }
 
+    /**
+     * Brings this repository in line with a new version of its JSON source, changing only the cars that differ.
+     * The source is streamed in batches and compared by code with the latest version: new codes are inserted,
+     * cars with any different value are replaced, and codes missing from the source are removed.
+     * All the changes are applied as one commit, so readers see either the previous version or the reloaded one.
+     *
+     * @param json the JSON array of cars, closed when reading finishes
+     * @return the number of inserted, updated and removed cars
+     * @throws IOException if an I/O error happens, the source is not a JSON array or a car has no code;
+     *                     the repository is then left unchanged
+     * @throws IllegalArgumentException if two cars of the source share a code; the repository is then left unchanged
+     * @implNote Only the differing cars are kept while the source is read. The diff is taken against the version
+     *           current when the reload starts; changes committed by other writers in the meantime are kept,
+     *           unless the diff touches the same codes.
+     *           The diff only narrows what is changed, not what the commit costs: like any commit, it copies the
+     *           list of cars, seals it again into the storage engine, and the indexes and other structures
+     *           derived from the snapshot are rebuilt over the whole catalog on their next use.
+     */
+    public ReloadResult reload(@NonNull final InputStream json) throws IOException {
+        final Snapshot<CarsSet> base = snapshot();
+        final List<CarsSet> changed = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        loadCars(config.loader(), json, batch -> {
+            for (CarsSet car : batch) {
+                if (!seen.add(car.getCode())) {
+                    throw new IllegalArgumentException("Duplicate key " + car.getCode());
+                }
+                Optional<CarsSet> before = find(base, car.getCode());
+                if (before.isEmpty() || !sameValues(before.get(), car)) {
+                    changed.add(car);
+                }
             }
         });
+        final List<String> removed = new ArrayList<>();
+        for (CarsSet car : base.getEntities()) {
+            if (!seen.contains(car.getCode())) {
+                removed.add(car.getCode());
+            }
+        }
 
-        // Return the sorted List of CarsSet instances by price in descending order
-        return cars;
+        int[] counts = new int[3];
+        for (Change<CarsSet> change : apply(batch -> {
+            changed.forEach(batch::put);
+            removed.forEach(batch::remove);
+        })) {
+            counts[change.getBefore() == null ? 0 : change.getAfter() == null ? 2 : 1]++;
+        }
+        return new ReloadResult(counts[0], counts[1], counts[2]);
     }
 
-    @Override
-    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
-        // Initialize a Map to store the count of CarsSet objects categorized by CarType
-        Map<CarsSet.CarType, Long> result = new EnumMap<>(CarsSet.CarType.class);
+    /**
+     * Saves the latest version of this repository to a binary snapshot file, replacing it atomically.
+     *
+     * @param file the binary snapshot file
+     * @throws IOException if an I/O error happens
+     */
+    public void save(@NonNull final Path file) throws IOException {
+        BinarySnapshot.write(getAll(), BinarySnapshot.fingerprint(null), file);
+    }
+
+    /**
+     * Writes the cars of the latest version to a stream, unlike {@link #toString()} without building them
+     * into one string first.
+     *
+     * @param exporter the format and options of the export
+     * @param out the destination, which is flushed but not closed
+     * @return the number of cars written
+     * @throws IOException if an I/O error happens
+     */
+    public long export(@NonNull final CarExporter exporter, @NonNull final OutputStream out) throws IOException {
+        return exporter.export(getAll(), out);
+    }
+
+    /**
+     * Writes the cars of the latest version to a channel, unlike {@link #toString()} without building them
+     * into one string first.
+     *
+     * @param exporter the format and options of the export
+     * @param channel the destination, which is not closed
+     * @return the number of cars written
+     * @throws IOException if an I/O error happens
+     */
+    public long export(@NonNull final CarExporter exporter, @NonNull final WritableByteChannel channel)
+            throws IOException {
+        return exporter.export(getAll(), channel);
+    }
+
+    /**
+     * Returns how much heap was saved while loading JSON by sharing repeated strings,
+     * such as car names and manufacturer names, instead of keeping one copy per record.
+     *
+     * @return an estimate in bytes, or 0 if the cars were not loaded from JSON
+     */
+    public long getDeduplicatedBytes() {
+        return deduplicatedBytes;
+    }
+
+    /**
+     * Returns the measurements of this repository: the duration and size of its load, and the latency
+     * and allocations of its query methods while measuring is enabled.
+     * Register it with {@link Instrumentation#register(String)} to read it through JMX.
+     *
+     * @return the instrumentation of this repository
+     */
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * Returns a read-only query view bound to one snapshot of this repository.
+     * Several queries run against the view see the same version even while writers commit new ones.
+     *
+     * @param snapshot a snapshot taken from this repository
+     * @return the queries over the given snapshot
+     */
+    public Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType> at(@NonNull final Snapshot<CarsSet> snapshot) {
+        return snapshot.derive(VIEW, View::new);
+    }
+
+    /**
+     * Looks up a car by its unique code.
+     *
+     * @param code the code to look up
+     * @return the car with the given code, or an empty Optional if there is none
+     */
+    public Optional<CarsSet> findByCode(@NonNull final String code) {
+        try (Instrumentation.Timer timer = instrumentation.start("findByCode")) {
+            // Mapped rows are searched in the code index of the file rather than in a heap hash map
+            return snapshot().getEntities() instanceof MappedCarStore.Rows mapped
+                    ? mapped.store().findByCode(code)
+                    : find(code);
+        }
+    }
+
+    /**
+     * Retrieves the cars whose price lies within a closed range.
+     *
+     * @param min the lowest price to include
+     * @param max the highest price to include
+     * @return a List of the matching cars sorted by price in ascending order
+     */
+    public List<CarsSet> findByPriceBetween(final int min, final int max) {
+        try (Instrumentation.Timer timer = instrumentation.start("findByPriceBetween")) {
+            return store().findByPriceBetween(min, max);
+        }
+    }
+
+    /**
+     * Retrieves the most expensive cars without sorting the whole repository.
+     *
+     * @param k the number of cars to retrieve
+     * @return at most k cars sorted by price in descending order, equal prices in load order,
+     *         which is the beginning of {@link #getCarsOrderByPriceDesc()}
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<CarsSet> topByPrice(final int k) {
+        try (Instrumentation.Timer timer = instrumentation.start("topByPrice")) {
+            return store().topByPrice(k);
+        }
+    }
+
+    /**
+     * Retrieves the first page of cars sorted by price in descending order and, between equal prices, in load order,
+     * as in {@link #getCarsOrderByPriceDesc()}.
+     *
+     * @param limit the highest number of cars on the page
+     * @return the page, whose {@link PricePage#getNext()} cursor fetches the following one
+     * @throws IllegalArgumentException if limit is not positive
+     */
+    public PricePage pageByPrice(final int limit) {
+        return pageByPrice(null, limit);
+    }
+
+    /**
+     * Retrieves the page of cars that follows a cursor, in the order of {@link #pageByPrice(int)}.
+     * Cursors stay valid across commits: the page starts right after the cursor's car in the latest version.
+     * If that car was removed or repriced since, the page starts at the first car of the cursor's price,
+     * so cars of that price may be repeated but none is skipped.
+     *
+     * @param after the cursor returned with the previous page, or {@code null} for the first page
+     * @param limit the highest number of cars on the page
+     * @return the page
+     * @throws IllegalArgumentException if limit is not positive
+     * @implNote The sorted view is built on the first page request of each snapshot and shared by the later ones.
+     */
+    public PricePage pageByPrice(final PriceCursor after, final int limit) {
+        try (Instrumentation.Timer timer = instrumentation.start("pageByPrice")) {
+            return snapshot().derive(PRICE_ORDER, s -> new PriceOrder(s.getEntities())).page(after, limit);
+        }
+    }
+
+    /**
+     * Retrieves the cars matching an ad hoc query.
+     *
+     * @param query the filters, order and limit
+     * @return the matching cars, in the order of the query
+     * @see #explain(CarQuery)
+     */
+    public List<CarsSet> query(@NonNull final CarQuery query) {
+        return query(query, Function.identity());
+    }
 
-        // Iterate through all CarsSet objects in the repository
-        for (CarsSet carsSet : getAll()){
-            // Get the CarType of each CarsSet object and update the count in the Map
-            result.put(
-                    carsSet.getCartype(),
-                    result.getOrDefault(carsSet.getCartype(),0L) + 1
-            );
+    /**
+     * Retrieves the cars matching an ad hoc query and projects each of them.
+     *
+     * @param query the filters, order and limit
+     * @param projection the function applied to every matching car, for instance {@code CarsSet::getCode}
+     * @param <R> the type of the results
+     * @return the projected results, in the order of the query
+     * @implNote The query reads the index of the storage engine yielding the fewest rows, or scans;
+     *           {@link #explain(CarQuery)} shows the choice.
+     */
+    public <R> List<R> query(
+            @NonNull final CarQuery query,
+            @NonNull final Function<? super CarsSet, ? extends R> projection) {
+        try (Instrumentation.Timer timer = instrumentation.start("query")) {
+            return QueryPlanner.run(store(), query, projection);
         }
+    }
 
-        // Return the Map containing the count of CarsSet instances for each CarType
-        return  result;
+    /**
+     * Describes how {@link #query(CarQuery)} would run a query against the latest version.
+     *
+     * @param query the query
+     * @return a one-line description of the access path and of the steps after it
+     */
+    public String explain(@NonNull final CarQuery query) {
+        return QueryPlanner.explain(store(), query);
+    }
+
+    /**
+     * Computes every {@link Queries} method over the latest version in one pass.
+     *
+     * @return the results of all the queries
+     * @see #batch(Set)
+     */
+    public QueryBatch batch() {
+        return batch(EnumSet.allOf(QueryBatch.Query.class));
+    }
+
+    /**
+     * Computes several {@link Queries} methods over the latest version in one pass,
+     * feeding every car to each query instead of scanning once per query.
+     *
+     * @param queries the queries to compute
+     * @return the results, all taken from the same snapshot
+     * @implNote The highest price and the counts per car type come from the aggregates without reading any car.
+     *           The other queries share a single scan, which runs on the fork-join pool from
+     *           {@link RepositoryConfig#getParallelThreshold()} cars.
+     */
+    public QueryBatch batch(@NonNull final Set<QueryBatch.Query> queries) {
+        try (Instrumentation.Timer timer = instrumentation.start("batch")) {
+            Snapshot<CarsSet> snapshot = snapshot();
+            Set<QueryBatch.Query> scanned = EnumSet.noneOf(QueryBatch.Query.class);
+            scanned.addAll(queries);
+            Map<QueryBatch.Query, Object> results = new EnumMap<>(QueryBatch.Query.class);
+            if (scanned.remove(QueryBatch.Query.HIGHEST_PRICE)) {
+                results.put(QueryBatch.Query.HIGHEST_PRICE, highestPrice(snapshot));
+            }
+            if (scanned.remove(QueryBatch.Query.COUNT_BY_CAR_TYPE)) {
+                results.put(QueryBatch.Query.COUNT_BY_CAR_TYPE, aggregate(snapshot, countByCarType));
+            }
+            List<CarsSet> cars = snapshot.getEntities();
+            results.putAll(QueryBatch.collect(
+                    cars, scanned, cars.size() >= config.getParallelThreshold(), ForkJoinPool.commonPool()));
+            return new QueryBatch(snapshot.getVersion(), results);
+        }
+    }
+
+    /**
+     * Returns the analytics over the specifications of the latest version.
+     *
+     * @return the analytics, bound to the latest snapshot
+     * @implNote The specifications are flattened into primitive columns on the first call for each snapshot
+     *           and shared by the later ones.
+     */
+    public SpecAnalytics specAnalytics() {
+        return new SpecAnalytics(snapshot().derive(SPEC_TABLE, s -> store(s).specTable()));
     }
 
     @Override
-    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
-        // Initialize a Map to group CarsSet objects by their CarType
-        Map<CarsSet.CarType, Set<CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+    public long getHighestPrice() {
+        try (Instrumentation.Timer timer = instrumentation.start("getHighestPrice")) {
+            return at(snapshot()).getHighestPrice();
+        }
+    }
+
+    /**
+     * Retrieves the highest price without failing on an empty repository.
+     *
+     * @return the highest price, or an empty OptionalLong if the repository holds no cars
+     * @see #getHighestPrice()
+     */
+    public OptionalLong findHighestPrice() {
+        try (Instrumentation.Timer timer = instrumentation.start("findHighestPrice")) {
+            return highestPrice(snapshot());
+        }
+    }
+
+    @Override
+    public Set<String> getCarsName() {
+        try (Instrumentation.Timer timer = instrumentation.start("getCarsName")) {
+            return at(snapshot()).getCarsName();
+        }
+    }
 
-        // Create an entry for each CarType in the Map with an empty Set
-        for(CarsSet.CarType carType : CarsSet.CarType.values()){
-            result.put(carType, new HashSet<>());
+    @Override
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        try (Instrumentation.Timer timer = instrumentation.start("getCarsOrderByPriceDesc")) {
+            return at(snapshot()).getCarsOrderByPriceDesc();
         }
+    }
 
-        // Iterate through all CarsSet objects in the repository
-        for (CarsSet carsSet : getAll()){
-            // Add each CarsSet object to the corresponding Set based on its CarType
-            result.get(carsSet.getCartype()).add(carsSet);
+    @Override
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        try (Instrumentation.Timer timer = instrumentation.start("getCountOfCarsByCarType")) {
+            return at(snapshot()).getCountOfCarsByCarType();
         }
+    }
 
-        // Return the Map grouping CarsSet instances by CarType
-        return result;
+    @Override
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        try (Instrumentation.Timer timer = instrumentation.start("getCarsByCarTypes")) {
+            return at(snapshot()).getCarsByCarTypes();
+        }
     }
 
     @Override
     public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
-        // Initialize a Map to store CarsSet objects categorized by CarType and unique codes
-        Map<CarsSet.CarType, Map<String, CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
-
-        // Iterate through all CarsSet objects in the repository
-        for (CarsSet carsSet : getAll()){
-            // Check if the outer Map does not contain the CarType as a key
-            if (!result.containsKey(carsSet.getCartype())){
-                // If the CarType is not present, add a new entry with an inner TreeMap
-                result.put(carsSet.getCartype(), new TreeMap<>());
+        try (Instrumentation.Timer timer = instrumentation.start("getCarsByCarTypeAndCodes")) {
+            return at(snapshot()).getCarsByCarTypeAndCodes();
+        }
+    }
+
+    @Override
+    protected String keyOf(final CarsSet car) {
+        return car.getCode();
+    }
+
+    @Override
+    protected void checkKeys(final Snapshot<CarsSet> snapshot) {
+        // Columnar and mapped rows compare code ids rather than materializing every car to index it
+        if (snapshot.getEntities() instanceof ColumnarCarStore.Rows columns) {
+            columns.store().checkCodes();
+        } else if (snapshot.getEntities() instanceof MappedCarStore.Rows mapped) {
+            mapped.store().checkCodes();
+        } else {
+            super.checkKeys(snapshot);
+        }
+    }
+
+    @Override
+    protected List<CarsSet> seal(final List<CarsSet> cars) {
+        return seal(cars, config);
+    }
+
+    private OptionalLong highestPrice(final Snapshot<CarsSet> snapshot) {
+        OptionalInt max = aggregate(snapshot, highestPrice);
+        return max.isPresent() ? OptionalLong.of(max.getAsInt()) : OptionalLong.empty();
+    }
+
+    private CarStore store() {
+        return store(snapshot());
+    }
+
+    private CarStore store(final Snapshot<CarsSet> snapshot) {
+        return store(snapshot, config);
+    }
+
+    private static CarStore store(final Snapshot<CarsSet> snapshot, final RepositoryConfig config) {
+        return snapshot.derive(STORE, s -> {
+            // Columnar and mapped rows carry their store; plain lists are scanned on the heap, in parallel when large
+            CarStore store = s.getEntities() instanceof ColumnarCarStore.Rows columns
+                    ? columns.store()
+                    : s.getEntities() instanceof MappedCarStore.Rows mapped
+                    ? mapped.store()
+                    : new ParallelCarStore(
+                            new HeapCarStore(s.getEntities()), config.getParallelThreshold(), ForkJoinPool.commonPool());
+            // The mapped store keeps no heap indexes, so that its footprint does not grow with the catalog
+            return config.isIndexed() && !(store instanceof MappedCarStore) ? new IndexedCarStore(store) : store;
+        });
+    }
+
+    /**
+     * The queries over one snapshot: aggregates answer what they can, the storage engine the rest.
+     */
+    private final class View implements Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType> {
+        private final Snapshot<CarsSet> snapshot;
+        private final CarStore store;
+
+        private View(final Snapshot<CarsSet> snapshot) {
+            this.snapshot = snapshot;
+            this.store = store(snapshot);
+        }
+
+        @Override
+        public long getHighestPrice() {
+            return highestPrice(snapshot).orElseThrow(Queries::noHighestPrice);
+        }
+
+        @Override
+        public Set<String> getCarsName() {
+            return store.getCarsName();
+        }
+
+        @Override
+        public List<CarsSet> getCarsOrderByPriceDesc() {
+            return store.getCarsOrderByPriceDesc();
+        }
+
+        @Override
+        public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+            return aggregate(snapshot, countByCarType);
+        }
+
+        @Override
+        public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+            return store.getCarsByCarTypes();
+        }
+
+        @Override
+        public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+            return store.getCarsByCarTypeAndCodes();
+        }
+    }
+
+    /**
+     * Compares every value of two cars, including each field of their specifications,
+     * whereas {@link CarsSet#equals(Object)} only compares codes.
+     */
+    private static boolean sameValues(final CarsSet a, final CarsSet b) {
+        if (!Objects.equals(a.getCode(), b.getCode()) || !Objects.equals(a.getName(), b.getName())
+                || a.getYear() != b.getYear() || a.getCartype() != b.getCartype() || a.getPrice() != b.getPrice()) {
+            return false;
+        }
+        Set<CarsSet.Specifications> left = a.getSpecifications() == null ? Set.of() : a.getSpecifications();
+        Set<CarsSet.Specifications> right = b.getSpecifications() == null ? Set.of() : b.getSpecifications();
+        if (left.size() != right.size()) {
+            return false;
+        }
+        Map<String, CarsSet.Specifications> byId = new HashMap<>();
+        for (CarsSet.Specifications spec : left) {
+            byId.put(spec.getId(), spec);
+        }
+        for (CarsSet.Specifications spec : right) {
+            CarsSet.Specifications other = byId.get(spec.getId());
+            if (other == null || !Objects.equals(spec.getName(), other.getName())
+                    || spec.getPower_hp() != other.getPower_hp() || spec.getWeight_in_kg() != other.getWeight_in_kg()) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            // Add the CarsSet object to the inner Map with its unique code as the key
-            result.get(carsSet.getCartype())
-                    .put(carsSet.getCode(),carsSet);
+    /**
+     * Converts a list of cars into the read-only rows of the storage engine selected by the configuration.
+     *
+     * @param cars the cars, owned by the callee
+     * @param config the options of the repository
+     * @return the rows to publish in a snapshot
+     */
+    private static List<CarsSet> seal(final List<CarsSet> cars, final RepositoryConfig config) {
+        switch (config.getStorage()) {
+            case MAPPED:
+                return new MappedCarStore(BinarySnapshot.encode(cars)).rows();
+            case COLUMNAR:
+                return ColumnarCarStore.builder().addAll(cars).build().rows();
+            case HEAP:
+            default:
+                return Collections.unmodifiableList(cars);
         }
+    }
+
+    /**
+     * Reads a binary snapshot file into the rows of the storage engine selected by the configuration.
+     *
+     * @param snapshot the binary snapshot file
+     * @param source the JSON file the snapshot must have been written for, or {@code null} to accept any snapshot
+     * @param config the options of the repository
+     * @return the rows to publish in the initial snapshot
+     * @throws IOException if the file cannot be read, is corrupt or is stale
+     */
+    private static List<CarsSet> rows(
+            final Path snapshot,
+            final Path source,
+            final RepositoryConfig config) throws IOException {
+        switch (config.getStorage()) {
+            case MAPPED:
+                // The mapping is the store; nothing is decoded
+                return new MappedCarStore(BinarySnapshot.map(snapshot, source)).rows();
+            case COLUMNAR:
+                return BinarySnapshot.read(snapshot, source).rows();
+            case HEAP:
+            default:
+                return Collections.unmodifiableList(new ArrayList<>(BinarySnapshot.read(snapshot, source).rows()));
+        }
+    }
+
+    /**
+     * Streams a JSON array of cars into the rows of the storage engine selected by the configuration.
+     *
+     * @param json the JSON source, closed when loading finishes
+     * @param config the options used while loading
+     * @param dictionary the dictionary sharing repeated strings during the load
+     * @param instrumentation the instrumentation recording the load
+     * @return the rows to publish in the initial snapshot
+     * @throws IOException if an I/O error happens
+     */
+    private static List<CarsSet> loadRows(
+            final InputStream json,
+            final RepositoryConfig config,
+            final StringDictionary dictionary,
+            final Instrumentation instrumentation) throws IOException {
+        long start = System.nanoTime();
+        long[] read = new long[2];
+        JsonStreamLoader<CarsSet> loader = new JsonStreamLoader<>(CarsSet.class, config.getBatchSize(),
+                (records, bytes) -> {
+                    config.getProgress().onProgress(records, bytes);
+                    read[0] = records;
+                    read[1] = bytes;
+                });
+
+        List<CarsSet> rows;
+        switch (config.getStorage()) {
+            case MAPPED:
+            case COLUMNAR:
+                // Each batch is copied into the columns and then dropped, so no full object list is ever built
+                ColumnarCarStore.Builder columns = ColumnarCarStore.builder(dictionary);
+                loadCars(loader, json, columns::addAll);
+                rows = columns.build().rows();
+                if (config.getStorage() == RepositoryConfig.Storage.MAPPED) {
+                    rows = new MappedCarStore(BinarySnapshot.encode(rows)).rows();
+                }
+                break;
+            case HEAP:
+            default:
+                ArrayList<CarsSet> cars = new ArrayList<>();
+                loadCars(loader, json, batch -> {
+                    for (CarsSet car : batch) {
+                        cars.add(share(car, dictionary));
+                    }
+                });
+                cars.trimToSize();
+                rows = Collections.unmodifiableList(cars);
+        }
+        instrumentation.recordLoad(read[0], read[1], System.nanoTime() - start);
+        return rows;
+    }
 
-        // Return the hierarchical Map containing CarsSet instances categorized by CarType and unique codes
-        return result;
+    /**
+     * Streams the cars of a JSON source into a sink, as the initial load and reload both do.
+     *
+     * @param loader the loader reading the source
+     * @param json the JSON source, closed when loading finishes
+     * @param sink the consumer of each batch
+     * @throws IOException if an I/O error happens, the source is not a JSON array or a car has no code
+     * @implNote A car without a code could neither be looked up nor replaced, so it fails the load
+     *           before the sink sees its batch.
+     */
+    private static void loadCars(
+            final JsonStreamLoader<CarsSet> loader,
+            final InputStream json,
+            final Consumer<? super List<CarsSet>> sink) throws IOException {
+        long[] records = new long[1];
+        try {
+            loader.load(json, batch -> {
+                for (CarsSet car : batch) {
+                    if (car.getCode() == null) {
+                        throw new UncheckedIOException(
+                                new IOException("The car at record " + records[0] + " has no code"));
+                    }
+                    records[0]++;
+                }
+                sink.accept(batch);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Replaces the repeated strings of a freshly parsed car by their shared instances.
+     * Only names are shared: codes and specification ids are unique per car.
+     *
+     * @param car the car, which is not visible to anyone else yet
+     * @param dictionary the dictionary of the load
+     * @return the same car
+     */
+    private static CarsSet share(final CarsSet car, final StringDictionary dictionary) {
+        car.setName(dictionary.intern(car.getName()));
+        if (car.getSpecifications() == null) {
+            return car;
+        }
+
+        // Specifications are immutable, so the set is rebuilt when any of its names can be shared
+        List<CarsSet.Specifications> specifications = new ArrayList<>(car.getSpecifications());
+        String[] names = new String[specifications.size()];
+        boolean shared = false;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = dictionary.intern(specifications.get(i).getName());
+            shared |= names[i] != specifications.get(i).getName();
+        }
+        if (shared) {
+            Set<CarsSet.Specifications> rebuilt = new HashSet<>();
+            for (int i = 0; i < names.length; i++) {
+                CarsSet.Specifications specification = specifications.get(i);
+                rebuilt.add(new CarsSet.Specifications(specification.getId(), names[i],
+                        specification.getPower_hp(), specification.getWeight_in_kg()));
+            }
+            car.setSpecifications(rebuilt);
+        }
+        return car;
     }
 }
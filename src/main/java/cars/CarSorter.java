@@ -0,0 +1,468 @@
+package cars;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * The CarSorter class sorts cars by a list of fields, each ascending or descending, through normalized keys:
+ * every car gets one fixed-width binary key whose unsigned order is the requested order,
+ * so the sort itself never calls a getter, {@link String#compareTo} or a {@link Comparator}.
+ * {@link #COMPARATOR_ORDER} sorts exactly as {@link CarsSet#COMPARATOR}; any other order is built
+ * with {@link #builder()}.
+ *
+ * <p>The sort is stable: cars with equal keys keep the order of the input, like {@link List#sort}.
+ * Strings compare like {@link String#compareTo} and car types by declaration order.
+ * {@code null} values come first in both directions, where {@link CarsSet#COMPARATOR} would throw.
+ *
+ * @implNote A string field whose values are short enough is encoded directly: every char becomes its rank
+ *           among the chars of the field, in as few bits as they need, and shorter strings are padded with zeros.
+ *           Longer strings are ranked instead: their distinct values are sorted and every car gets the rank of its value.
+ *           Integer fields are offset by their minimum. Each field then takes as many bits as its largest value needs,
+ *           inverted when descending, and the fields are packed from the first to the last.
+ *           When the key and the position of the car fit in one {@code long}, the packed values are sorted
+ *           with an LSD radix sort, or with {@link Arrays#parallelSort(long[])}, the parallel merge sort of the JDK,
+ *           by {@link #parallelSort}; wider keys are radix sorted word by word.
+ */
+public final class CarSorter {
+    /**
+     * The order of {@link CarsSet#COMPARATOR}: by name, then by year descending, then by code descending.
+     */
+    public static final CarSorter COMPARATOR_ORDER = builder()
+            .ascending(Field.NAME)
+            .descending(Field.YEAR)
+            .descending(Field.CODE)
+            .build();
+
+    private static final int DIGIT_BITS = 11;
+    private static final int DIGIT_MASK = (1 << DIGIT_BITS) - 1;
+
+    private final Field[] fields;
+    private final boolean[] descending;
+
+    private CarSorter(final Builder builder) {
+        this.fields = builder.fields.toArray(new Field[0]);
+        this.descending = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            descending[i] = builder.descending.get(i);
+        }
+    }
+
+    /**
+     * Creates a builder for an order without any field, which keeps the input order.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Sorts cars.
+     *
+     * @param cars the cars to sort, which are left unchanged
+     * @return a new List of the cars in this order
+     */
+    public List<CarsSet> sort(@NonNull final Collection<CarsSet> cars) {
+        return sort(cars, false);
+    }
+
+    /**
+     * Sorts cars, building the keys and sorting them on the common fork-join pool.
+     *
+     * @param cars the cars to sort, which are left unchanged
+     * @return a new List of the cars in this order
+     */
+    public List<CarsSet> parallelSort(@NonNull final Collection<CarsSet> cars) {
+        return sort(cars, true);
+    }
+
+    /**
+     * Returns a comparator imposing this order, for instance to merge sorted lists.
+     *
+     * @return the comparator, which is consistent with {@link #sort} including the place of {@code null} values
+     */
+    public Comparator<CarsSet> comparator() {
+        Comparator<CarsSet> comparator = (a, b) -> 0;
+        for (int i = 0; i < fields.length; i++) {
+            comparator = comparator.thenComparing(fields[i].comparator(descending[i]));
+        }
+        return comparator;
+    }
+
+    private List<CarsSet> sort(final Collection<CarsSet> cars, final boolean parallel) {
+        // One copy of the cars, so that stores materializing their rows build each car once
+        CarsSet[] rows = cars.toArray(new CarsSet[0]);
+        int n = rows.length;
+        long[][] keys = new long[fields.length][];
+        int[] widths = new int[fields.length];
+        int totalBits = 0;
+        for (int i = 0; i < fields.length; i++) {
+            keys[i] = fields[i].normalize(rows, parallel);
+            long max = 0;
+            for (long key : keys[i]) {
+                max = Math.max(max, key);
+            }
+            widths[i] = Long.SIZE - Long.numberOfLeadingZeros(max);
+            if (descending[i]) {
+                long[] column = keys[i];
+                // Key 0 stands for null in fields that can be null, and stays first
+                long top = fields[i].isNullable() ? max + 1 : max;
+                for (int r = 0; r < n; r++) {
+                    column[r] = fields[i].isNullable() && column[r] == 0 ? 0 : top - column[r];
+                }
+            }
+            totalBits += widths[i];
+        }
+
+        int positionBits = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(n));
+        List<CarsSet> sorted = new ArrayList<>(n);
+        if (totalBits + positionBits < Long.SIZE) {
+            // The position in the low bits breaks ties by input order, which keeps the sort stable
+            long[] packed = new long[n];
+            for (int r = 0; r < n; r++) {
+                long key = 0;
+                for (int i = 0; i < fields.length; i++) {
+                    key = key << widths[i] | keys[i][r];
+                }
+                packed[r] = key << positionBits | r;
+            }
+            if (parallel) {
+                Arrays.parallelSort(packed);
+            } else {
+                radixSort(packed, positionBits, positionBits + totalBits);
+            }
+            long positionMask = (1L << positionBits) - 1;
+            for (long value : packed) {
+                sorted.add(rows[(int) (value & positionMask)]);
+            }
+        } else {
+            List<long[]> words = new ArrayList<>();
+            List<Integer> bits = new ArrayList<>();
+            pack(keys, widths, n, words, bits);
+            for (int r : radixSort(words, bits, n)) {
+                sorted.add(rows[r]);
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Packs the fields into as few 64-bit words as possible, the first field in the highest bits of the first word.
+     *
+     * @param words receives the words of every car
+     * @param bits receives the number of bits used in each word
+     */
+    private static void pack(
+            final long[][] keys,
+            final int[] widths,
+            final int n,
+            final List<long[]> words,
+            final List<Integer> bits) {
+        long[] word = new long[n];
+        int used = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used + widths[i] > Long.SIZE) {
+                words.add(word);
+                bits.add(used);
+                word = new long[n];
+                used = 0;
+            }
+            for (int r = 0; r < n; r++) {
+                word[r] = word[r] << widths[i] | keys[i][r];
+            }
+            used += widths[i];
+        }
+        words.add(word);
+        bits.add(used);
+    }
+
+    /**
+     * Sorts values by a range of their bits with a stable LSD radix sort, one digit per pass.
+     */
+    private static void radixSort(final long[] values, final int fromBit, final int toBit) {
+        long[] from = values;
+        long[] to = new long[values.length];
+        int[] counts = new int[DIGIT_MASK + 1];
+        for (int shift = fromBit; shift < toBit; shift += DIGIT_BITS) {
+            Arrays.fill(counts, 0);
+            for (long value : from) {
+                counts[(int) (value >>> shift) & DIGIT_MASK]++;
+            }
+            if (!prefixSums(counts, values.length)) {
+                continue;
+            }
+            for (long value : from) {
+                to[counts[(int) (value >>> shift) & DIGIT_MASK]++] = value;
+            }
+            long[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != values) {
+            System.arraycopy(from, 0, values, 0, values.length);
+        }
+    }
+
+    /**
+     * Sorts the positions of the cars by their words with a stable LSD radix sort, from the last word to the first.
+     */
+    private static int[] radixSort(final List<long[]> words, final List<Integer> bits, final int n) {
+        int[] from = IntStream.range(0, n).toArray();
+        int[] to = new int[n];
+        int[] counts = new int[DIGIT_MASK + 1];
+        for (int w = words.size() - 1; w >= 0; w--) {
+            long[] word = words.get(w);
+            for (int shift = 0; shift < bits.get(w); shift += DIGIT_BITS) {
+                Arrays.fill(counts, 0);
+                for (int r : from) {
+                    counts[(int) (word[r] >>> shift) & DIGIT_MASK]++;
+                }
+                if (!prefixSums(counts, n)) {
+                    continue;
+                }
+                for (int r : from) {
+                    to[counts[(int) (word[r] >>> shift) & DIGIT_MASK]++] = r;
+                }
+                int[] swap = from;
+                from = to;
+                to = swap;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Turns digit counts into the first slot of each digit.
+     *
+     * @return false if every value has the same digit, so the pass would change nothing
+     */
+    private static boolean prefixSums(final int[] counts, final int n) {
+        int sum = 0;
+        for (int d = 0; d < counts.length; d++) {
+            if (counts[d] == n) {
+                return false;
+            }
+            int count = counts[d];
+            counts[d] = sum;
+            sum += count;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the keys of a string field: {@code null} is 0 and the strings follow from 1 in their order.
+     * Strings short enough over a small enough alphabet are encoded directly, char by char;
+     * the others are ranked, which sorts their distinct values.
+     */
+    private static long[] strings(final CarsSet[] rows, final Function<CarsSet, String> getter, final boolean parallel) {
+        // The chars in use, and the length of the longest string
+        boolean[] used = new boolean[Character.MAX_VALUE + 1];
+        int maxLength = 0;
+        for (CarsSet car : rows) {
+            String value = getter.apply(car);
+            if (value != null) {
+                maxLength = Math.max(maxLength, value.length());
+                for (int i = 0; i < value.length(); i++) {
+                    used[value.charAt(i)] = true;
+                }
+            }
+        }
+        int[] codes = new int[used.length];
+        int alphabet = 0;
+        for (int c = 0; c < used.length; c++) {
+            if (used[c]) {
+                codes[c] = ++alphabet;
+            }
+        }
+        int charBits = Integer.SIZE - Integer.numberOfLeadingZeros(alphabet);
+        if ((long) maxLength * charBits > Long.SIZE - 2) {
+            return rank(rows, getter, parallel);
+        }
+
+        // Codes 1 and up keep the order of the chars and 0 pads the shorter strings, which sort first;
+        // the added one keeps 0 free for null
+        int length = maxLength;
+        long[] keys = new long[rows.length];
+        IntStream positions = IntStream.range(0, rows.length);
+        (parallel ? positions.parallel() : positions).forEach(r -> {
+            String value = getter.apply(rows[r]);
+            if (value != null) {
+                long key = 0;
+                for (int i = 0; i < length; i++) {
+                    key = key << charBits | (i < value.length() ? codes[value.charAt(i)] : 0);
+                }
+                keys[r] = key + 1;
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * Ranks the values of a string field: {@code null} is 0 and the distinct strings get 1, 2, ... in their order.
+     */
+    private static long[] rank(final CarsSet[] rows, final Function<CarsSet, String> getter, final boolean parallel) {
+        Map<String, Integer> ranks = new HashMap<>();
+        for (CarsSet car : rows) {
+            String value = getter.apply(car);
+            if (value != null) {
+                ranks.putIfAbsent(value, 0);
+            }
+        }
+        String[] distinct = ranks.keySet().toArray(new String[0]);
+        if (parallel) {
+            Arrays.parallelSort(distinct);
+        } else {
+            Arrays.sort(distinct);
+        }
+        for (int i = 0; i < distinct.length; i++) {
+            ranks.put(distinct[i], i + 1);
+        }
+        long[] keys = new long[rows.length];
+        IntStream positions = IntStream.range(0, rows.length);
+        (parallel ? positions.parallel() : positions).forEach(r -> {
+            String value = getter.apply(rows[r]);
+            keys[r] = value == null ? 0 : ranks.get(value);
+        });
+        return keys;
+    }
+
+    /**
+     * Offsets the values of an integer field by their minimum, so they start at 0.
+     */
+    private static long[] offset(final CarsSet[] rows, final ToIntFunction<CarsSet> getter) {
+        long[] keys = new long[rows.length];
+        long min = Long.MAX_VALUE;
+        for (int r = 0; r < rows.length; r++) {
+            keys[r] = getter.applyAsInt(rows[r]);
+            min = Math.min(min, keys[r]);
+        }
+        for (int r = 0; r < rows.length; r++) {
+            keys[r] -= min;
+        }
+        return keys;
+    }
+
+    /**
+     * The fields cars can be sorted by.
+     */
+    public enum Field {
+        CODE,
+        NAME,
+        YEAR,
+        CARTYPE,
+        PRICE;
+
+        /**
+         * Returns the normalized key of every car for this field, non-negative and ascending with the field.
+         */
+        private long[] normalize(final CarsSet[] rows, final boolean parallel) {
+            switch (this) {
+                case CODE:
+                    return strings(rows, CarsSet::getCode, parallel);
+                case NAME:
+                    return strings(rows, CarsSet::getName, parallel);
+                case YEAR:
+                    return offset(rows, CarsSet::getYear);
+                case CARTYPE:
+                    long[] keys = new long[rows.length];
+                    for (int r = 0; r < rows.length; r++) {
+                        CarsSet.CarType carType = rows[r].getCartype();
+                        keys[r] = carType == null ? 0 : carType.ordinal() + 1;
+                    }
+                    return keys;
+                case PRICE:
+                default:
+                    return offset(rows, CarsSet::getPrice);
+            }
+        }
+
+        /**
+         * Tells whether the field can be null, in which case its key 0 stands for null.
+         */
+        private boolean isNullable() {
+            return this == CODE || this == NAME || this == CARTYPE;
+        }
+
+        /**
+         * Returns a comparator on this field, with {@code null} first in both directions.
+         */
+        private Comparator<CarsSet> comparator(final boolean descending) {
+            switch (this) {
+                case CODE:
+                    return Comparator.comparing(CarsSet::getCode,
+                            nullsFirst(descending, Comparator.<String>naturalOrder()));
+                case NAME:
+                    return Comparator.comparing(CarsSet::getName,
+                            nullsFirst(descending, Comparator.<String>naturalOrder()));
+                case CARTYPE:
+                    return Comparator.comparing(CarsSet::getCartype,
+                            nullsFirst(descending, Comparator.<CarsSet.CarType>naturalOrder()));
+                case YEAR:
+                    Comparator<CarsSet> year = Comparator.comparingInt(CarsSet::getYear);
+                    return descending ? year.reversed() : year;
+                case PRICE:
+                default:
+                    Comparator<CarsSet> price = Comparator.comparingInt(CarsSet::getPrice);
+                    return descending ? price.reversed() : price;
+            }
+        }
+
+        private static <T> Comparator<T> nullsFirst(final boolean descending, final Comparator<T> order) {
+            return Comparator.nullsFirst(descending ? order.reversed() : order);
+        }
+    }
+
+    /**
+     * Collects the fields of an order, from the most significant to the least.
+     */
+    public static final class Builder {
+        private final List<Field> fields = new ArrayList<>();
+        private final List<Boolean> descending = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sorts by a field in ascending order, between cars equal on the fields added before.
+         *
+         * @param field the field
+         * @return this builder
+         */
+        public Builder ascending(@NonNull final Field field) {
+            fields.add(field);
+            descending.add(false);
+            return this;
+        }
+
+        /**
+         * Sorts by a field in descending order, between cars equal on the fields added before.
+         *
+         * @param field the field
+         * @return this builder
+         */
+        public Builder descending(@NonNull final Field field) {
+            fields.add(field);
+            descending.add(true);
+            return this;
+        }
+
+        /**
+         * Creates the sorter.
+         *
+         * @return the sorter
+         */
+        public CarSorter build() {
+            return new CarSorter(this);
+        }
+    }
+}
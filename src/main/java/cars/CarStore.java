@@ -0,0 +1,96 @@
+package cars;
+
+import base.Queries;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * A storage engine behind {@link CarSetRepository}.
+ * It owns the rows of the repository and answers the {@link Queries} methods over its own representation.
+ *
+ * <p>Cars without a car type are left out of the queries grouped by car type, which have no key for them.
+ * Every other query still returns them.
+ */
+interface CarStore extends Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType> {
+
+    /**
+     * Returns the rows held by this store.
+     *
+     * @return a read-only List of CarsSet instances in load order
+     */
+    List<CarsSet> rows();
+
+    /**
+     * Retrieves the cars whose price lies within a closed range.
+     *
+     * @param min the lowest price to include
+     * @param max the highest price to include
+     * @return a List of the matching cars sorted by price in ascending order
+     * @implNote The default implementation scans every row and sorts the matches.
+     */
+    default List<CarsSet> findByPriceBetween(int min, int max) {
+        List<CarsSet> cars = new ArrayList<>();
+        for (CarsSet car : rows()) {
+            if (car.getPrice() >= min && car.getPrice() <= max) {
+                cars.add(car);
+            }
+        }
+        cars.sort(Comparator.comparingInt(CarsSet::getPrice));
+        return cars;
+    }
+
+    /**
+     * Retrieves the most expensive cars.
+     *
+     * @param k the number of cars to retrieve
+     * @return at most k cars sorted by price in descending order, equal prices in load order,
+     *         which is the beginning of {@link #getCarsOrderByPriceDesc()}
+     * @implNote The default implementation scans every row through a bounded heap of k entries.
+     */
+    default List<CarsSet> topByPrice(int k) {
+        List<CarsSet> rows = rows();
+        int[] top = TopPrices.rows(rows.size(), row -> rows.get(row).getPrice(), k);
+        List<CarsSet> cars = new ArrayList<>(top.length);
+        for (int row : top) {
+            cars.add(rows.get(row));
+        }
+        return cars;
+    }
+
+    /**
+     * Lists the indexes this store can read the candidate rows of a query from.
+     * The planner compares them with the full scan, which every store offers.
+     *
+     * @param query the query to plan
+     * @return the access paths, possibly none
+     */
+    default List<AccessPath> accessPaths(CarQuery query) {
+        return List.of();
+    }
+
+    /**
+     * Creates a test of the rows of this store against the filters of a query.
+     * The returned predicate is used by one thread only.
+     *
+     * @param query the query whose filters to test
+     * @return a predicate over row positions
+     * @implNote The default implementation tests each row as a CarsSet instance.
+     */
+    default IntPredicate matcher(CarQuery query) {
+        List<CarsSet> rows = rows();
+        return row -> query.matches(rows.get(row));
+    }
+
+    /**
+     * Flattens the specifications of the rows into primitive columns.
+     *
+     * @return the table behind {@link SpecAnalytics}
+     * @implNote The default implementation reads every row as a CarsSet instance.
+     */
+    default SpecTable specTable() {
+        return SpecTable.of(rows());
+    }
+}
@@ -0,0 +1,189 @@
+package cars;
+
+import base.Repository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * The CarsSetGenerator class produces realistic synthetic car catalogs of any size for benchmarks and stress tests.
+ * The same seed and count always produce the same cars.
+ *
+ * <p>Every car is drawn from a fixed catalog of models: the model decides the name, car type and manufacturer,
+ * while the year, price, power and weight vary around the model's base values. A newer car is more expensive.
+ * Codes are unique eight-digit numbers in scrambled order.
+ */
+public class CarsSetGenerator {
+    private static final long CODE_SPACE = 100_000_000L;
+    private static final long CODE_MULTIPLIER = 73_856_093L;
+    private static final int FIRST_YEAR = 2000;
+    private static final int LAST_YEAR = 2024;
+
+    private static final Model[] MODELS = {
+            new Model("Audi", "A3", CarsSet.CarType.COMPACT, 32_000, 150, 1_350),
+            new Model("Audi", "A6", CarsSet.CarType.SEDAN, 60_000, 335, 1_800),
+            new Model("Audi", "A8L", CarsSet.CarType.LIMOUSINE, 90_000, 335, 2_100),
+            new Model("Audi", "Q7", CarsSet.CarType.SUV, 70_000, 335, 2_250),
+            new Model("Audi", "R8", CarsSet.CarType.SUPER, 160_000, 562, 1_600),
+            new Model("BMW", "1 Series", CarsSet.CarType.COMPACT, 30_000, 136, 1_400),
+            new Model("BMW", "3 Series", CarsSet.CarType.SEDAN, 48_000, 255, 1_650),
+            new Model("BMW", "7 Series", CarsSet.CarType.LIMOUSINE, 95_000, 375, 2_050),
+            new Model("BMW", "X5", CarsSet.CarType.SUV, 65_000, 335, 2_200),
+            new Model("BMW", "M4", CarsSet.CarType.SPORT, 78_000, 473, 1_700),
+            new Model("Ferrari", "Roma", CarsSet.CarType.SPORT, 220_000, 612, 1_570),
+            new Model("Ferrari", "296 GTB", CarsSet.CarType.SUPER, 320_000, 818, 1_470),
+            new Model("Ford", "Focus", CarsSet.CarType.COMPACT, 24_000, 125, 1_300),
+            new Model("Ford", "F-150", CarsSet.CarType.PICKUP, 45_000, 400, 2_200),
+            new Model("Ford", "Mustang", CarsSet.CarType.SPORT, 42_000, 450, 1_750),
+            new Model("Ford", "Explorer", CarsSet.CarType.SUV, 40_000, 300, 2_000),
+            new Model("Honda", "Civic", CarsSet.CarType.COMPACT, 25_000, 158, 1_300),
+            new Model("Honda", "Accord", CarsSet.CarType.SEDAN, 28_000, 192, 1_500),
+            new Model("Honda", "Ridgeline", CarsSet.CarType.PICKUP, 40_000, 280, 2_000),
+            new Model("Lamborghini", "Huracan", CarsSet.CarType.SUPER, 250_000, 610, 1_422),
+            new Model("Lamborghini", "Urus", CarsSet.CarType.SUV, 230_000, 641, 2_200),
+            new Model("Mercedes-Benz", "C-Class", CarsSet.CarType.SEDAN, 46_000, 255, 1_650),
+            new Model("Mercedes-Benz", "S-Class", CarsSet.CarType.LIMOUSINE, 115_000, 429, 2_100),
+            new Model("Mercedes-Benz", "GLE", CarsSet.CarType.SUV, 62_000, 375, 2_300),
+            new Model("Rolls-Royce", "Phantom", CarsSet.CarType.LIMOUSINE, 460_000, 563, 2_600),
+            new Model("Rolls-Royce", "Cullinan", CarsSet.CarType.SUV, 340_000, 563, 2_721),
+            new Model("Toyota", "Corolla", CarsSet.CarType.COMPACT, 22_000, 139, 1_300),
+            new Model("Toyota", "Camry", CarsSet.CarType.SEDAN, 27_000, 203, 1_500),
+            new Model("Toyota", "RAV4", CarsSet.CarType.SUV, 32_000, 203, 1_650),
+            new Model("Toyota", "Tacoma", CarsSet.CarType.PICKUP, 38_000, 278, 2_000),
+            new Model("Volvo", "XC60", CarsSet.CarType.SUV, 45_000, 250, 2_000),
+            new Model("Fiat", "500", CarsSet.CarType.COMPACT, 18_000, 69, 940)
+    };
+
+    private final long seed;
+
+    /**
+     * Creates a generator.
+     *
+     * @param seed the seed deciding which cars are produced
+     */
+    public CarsSetGenerator(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Generates a catalog into memory.
+     *
+     * @param count the number of cars
+     * @return the generated cars
+     */
+    public List<CarsSet> generate(final int count) {
+        List<CarsSet> cars = new ArrayList<>(count);
+        forEach(count, cars::add);
+        return cars;
+    }
+
+    /**
+     * Generates a catalog one car at a time, without keeping it in memory.
+     *
+     * @param count the number of cars
+     * @param sink the consumer of every generated car
+     */
+    public void forEach(final long count, @NonNull final Consumer<? super CarsSet> sink) {
+        checkCount(count);
+        SplittableRandom random = new SplittableRandom(seed);
+        for (long i = 0; i < count; i++) {
+            sink.accept(next(random, i));
+        }
+    }
+
+    /**
+     * Writes a catalog as a JSON array in the format of {@code data.json}.
+     *
+     * @param count the number of cars
+     * @param out the destination, which is flushed but not closed
+     * @throws IOException if an I/O error happens
+     */
+    public void writeJson(final long count, @NonNull final OutputStream out) throws IOException {
+        checkCount(count);
+        ObjectWriter writer = Repository.MAPPER.writerFor(CarsSet.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator json = Repository.MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.writeStartArray();
+            SplittableRandom random = new SplittableRandom(seed);
+            for (long i = 0; i < count; i++) {
+                writer.writeValue(json, next(random, i));
+            }
+            json.writeEndArray();
+        }
+    }
+
+    /**
+     * Draws the next car.
+     *
+     * @param random the random source
+     * @param index the position of the car in the catalog
+     * @return the car
+     */
+    private static CarsSet next(final SplittableRandom random, final long index) {
+        Model model = MODELS[random.nextInt(MODELS.length)];
+        int year = FIRST_YEAR + random.nextInt(LAST_YEAR - FIRST_YEAR + 1);
+
+        // Lose about five percent of the value per year of age, with some noise per car
+        double depreciation = Math.pow(0.95, LAST_YEAR - year);
+        int price = (int) Math.round(model.price * depreciation * jitter(random, 0.1) / 100) * 100;
+        int power = (int) Math.round(model.power * jitter(random, 0.08));
+        int weight = (int) Math.round(model.weight * jitter(random, 0.05));
+
+        String code = String.format("%08d", index * CODE_MULTIPLIER % CODE_SPACE);
+        String specificationId = model.slug + "_" + Long.toString(index, 36).toUpperCase();
+
+        return CarsSet.builder()
+                .code(code)
+                .name(model.maker + " " + model.name)
+                .year(year)
+                .cartype(model.carType)
+                .price(price)
+                .specifications(Set.of(new CarsSet.Specifications(specificationId, model.maker, power, weight)))
+                .build();
+    }
+
+    private static void checkCount(final long count) {
+        // Codes are unique only within the eight-digit code space
+        if (count < 0 || count > CODE_SPACE) {
+            throw new IllegalArgumentException("count must be between 0 and " + CODE_SPACE + ": " + count);
+        }
+    }
+
+    private static double jitter(final SplittableRandom random, final double spread) {
+        return 1 + (random.nextDouble() * 2 - 1) * spread;
+    }
+
+    /**
+     * A model of the catalog with its base values.
+     */
+    private static final class Model {
+        private final String maker;
+        private final String name;
+        private final CarsSet.CarType carType;
+        private final int price;
+        private final int power;
+        private final int weight;
+        private final String slug;
+
+        private Model(String maker, String name, CarsSet.CarType carType, int price, int power, int weight) {
+            this.maker = maker;
+            this.name = name;
+            this.carType = carType;
+            this.price = price;
+            this.power = power;
+            this.weight = weight;
+            this.slug = (maker + name).toLowerCase().replaceAll("[^a-z0-9]", "");
+        }
+    }
+}
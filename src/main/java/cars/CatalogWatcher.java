@@ -0,0 +1,196 @@
+package cars;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CatalogWatcher class keeps a {@link CarSetRepository} in line with its JSON file.
+ * A background thread watches the directory of the file through a {@link WatchService} and,
+ * once the file has been quiet for a short while after a change, applies it with
+ * {@link CarSetRepository#reload(java.io.InputStream)}, so only the cars that differ are changed.
+ * Each reload is still one full commit, whose cost grows with the catalog rather than with the number of changes.
+ *
+ * <p>A reload that fails, for instance because the file was read while half written, leaves the repository
+ * unchanged; the next change of the file triggers a new attempt.
+ */
+public final class CatalogWatcher implements AutoCloseable {
+    private static final long DEFAULT_QUIET_MILLIS = 200;
+
+    private final CarSetRepository repository;
+    private final Path file;
+    private final Listener listener;
+    private final long quietMillis;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private CatalogWatcher(
+            final CarSetRepository repository,
+            final Path file,
+            final Listener listener,
+            final long quietMillis) throws IOException {
+        this.repository = repository;
+        this.file = file.toAbsolutePath();
+        this.listener = listener;
+        this.quietMillis = quietMillis;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        // Editors often replace the file instead of writing to it, which shows up as a creation
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "catalog-watcher-" + this.file.getFileName());
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching a JSON file.
+     *
+     * @param repository the repository to keep in line with the file
+     * @param file the JSON file
+     * @param listener the listener told about every reload
+     * @return the running watcher, to close when done
+     * @throws IOException if the directory of the file cannot be watched
+     */
+    public static CatalogWatcher watch(
+            @NonNull final CarSetRepository repository,
+            @NonNull final Path file,
+            @NonNull final Listener listener) throws IOException {
+        return watch(repository, file, listener, DEFAULT_QUIET_MILLIS);
+    }
+
+    /**
+     * Starts watching a JSON file.
+     *
+     * @param repository the repository to keep in line with the file
+     * @param file the JSON file
+     * @param listener the listener told about every reload
+     * @param quietMillis how long the file must stay unchanged before it is reloaded
+     * @return the running watcher, to close when done
+     * @throws IOException if the directory of the file cannot be watched
+     */
+    public static CatalogWatcher watch(
+            @NonNull final CarSetRepository repository,
+            @NonNull final Path file,
+            @NonNull final Listener listener,
+            final long quietMillis) throws IOException {
+        CatalogWatcher watcher = new CatalogWatcher(repository, file, listener, quietMillis);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    /**
+     * Reloads the file right away, without waiting for a change.
+     *
+     * @return the changes applied
+     * @throws IOException if an I/O error happens or the file is not a JSON array
+     */
+    public ReloadResult reload() throws IOException {
+        return repository.reload(Files.newInputStream(file));
+    }
+
+    /**
+     * Stops watching and waits for a reload in progress to finish, unless called by the listener itself.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Closing only releases resources, the thread still stops below
+        }
+        if (Thread.currentThread() == thread) {
+            // Closed by the listener, the loop ends once it returns
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                boolean changed = changed(watchService.take());
+                // Wait until the directory has been quiet for a while, since writers often touch a file several times
+                while (changed) {
+                    WatchKey more = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+                    if (more == null) {
+                        break;
+                    }
+                    changed(more);
+                }
+                if (changed) {
+                    ReloadResult result;
+                    try {
+                        result = reload();
+                    } catch (IOException | RuntimeException e) {
+                        listener.failed(file, e);
+                        continue;
+                    }
+                    // Told outside the try, so that a failing listener is not mistaken for a failed reload
+                    try {
+                        listener.reloaded(file, result);
+                    } catch (RuntimeException e) {
+                        // The reload is committed; report the listener's failure and keep watching
+                        Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // The watcher was closed
+        }
+    }
+
+    /**
+     * Drains the events of a key and tells whether any of them may concern the watched file.
+     */
+    private boolean changed(final WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // An overflow means events were lost, possibly ones about the file
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Receives the outcome of every reload triggered by a change of the file.
+     * It is called on the watcher thread; an exception thrown by {@link #reloaded} goes to the uncaught exception
+     * handler of that thread, since the reload is already committed, and the watcher keeps running.
+     */
+    public interface Listener {
+        /**
+         * A listener ignoring every outcome.
+         */
+        Listener NONE = new Listener() {
+        };
+
+        /**
+         * Called after a reload was applied.
+         *
+         * @param file the watched file
+         * @param result the changes applied, possibly none
+         */
+        default void reloaded(Path file, ReloadResult result) {
+        }
+
+        /**
+         * Called after a reload failed and left the repository unchanged.
+         *
+         * @param file the watched file
+         * @param error the failure
+         */
+        default void failed(Path file, Exception error) {
+        }
+    }
+}
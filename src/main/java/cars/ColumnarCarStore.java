@@ -0,0 +1,428 @@
+package cars;
+
+import base.Queries;
+import base.StringDictionary;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * The ColumnarCarStore class keeps cars as a struct of primitive arrays instead of CarsSet objects.
+ * Prices and years are stored in {@code int[]} columns, car types as {@code byte[]} ordinals ({@code -1} for none),
+ * and every string (codes, names and specification fields) is dictionary-coded into {@code int[]} ids.
+ *
+ * <p>Queries run directly over the columns. CarsSet objects are only materialized for the rows a query returns,
+ * so each call hands out fresh instances.
+ */
+final class ColumnarCarStore implements CarStore {
+    private static final CarsSet.CarType[] CAR_TYPES = CarsSet.CarType.values();
+    static final int NULL_ID = -1;
+
+    // The columns are read in place by BinarySnapshot, which writes them out unchanged
+    final int size;
+    final String[] dictionary;
+    final int[] code;
+    final int[] name;
+    final int[] year;
+    final byte[] cartype;
+    final int[] price;
+
+    // Specifications of row i occupy the range [specStart[i], specStart[i + 1]) of the spec columns
+    final int[] specStart;
+    final int[] specId;
+    final int[] specName;
+    final int[] specPower;
+    final int[] specWeight;
+
+    private final List<CarsSet> rows = new Rows();
+
+    private ColumnarCarStore(final Builder builder) {
+        this(builder.dictionary.toArray(),
+                Arrays.copyOf(builder.code, builder.size),
+                Arrays.copyOf(builder.name, builder.size),
+                Arrays.copyOf(builder.year, builder.size),
+                Arrays.copyOf(builder.cartype, builder.size),
+                Arrays.copyOf(builder.price, builder.size),
+                Arrays.copyOf(builder.specStart, builder.size + 1),
+                Arrays.copyOf(builder.specId, builder.specCount),
+                Arrays.copyOf(builder.specName, builder.specCount),
+                Arrays.copyOf(builder.specPower, builder.specCount),
+                Arrays.copyOf(builder.specWeight, builder.specCount));
+    }
+
+    /**
+     * Creates a store over complete columns, which it takes ownership of.
+     * Every row column has the same length, and {@code specStart} holds one more entry than there are rows.
+     */
+    ColumnarCarStore(
+            final String[] dictionary,
+            final int[] code,
+            final int[] name,
+            final int[] year,
+            final byte[] cartype,
+            final int[] price,
+            final int[] specStart,
+            final int[] specId,
+            final int[] specName,
+            final int[] specPower,
+            final int[] specWeight) {
+        this.size = code.length;
+        this.dictionary = dictionary;
+        this.code = code;
+        this.name = name;
+        this.year = year;
+        this.cartype = cartype;
+        this.price = price;
+        this.specStart = specStart;
+        this.specId = specId;
+        this.specName = specName;
+        this.specPower = specPower;
+        this.specWeight = specWeight;
+    }
+
+    /**
+     * Creates a builder that appends rows to a new store.
+     *
+     * @return a new, empty builder
+     */
+    static Builder builder() {
+        return new Builder(new StringDictionary());
+    }
+
+    /**
+     * Creates a builder that appends rows to a new store and dictionary-codes strings into the given dictionary.
+     *
+     * @param dictionary the dictionary, which must not be shared with another builder
+     * @return a new, empty builder
+     */
+    static Builder builder(@NonNull final StringDictionary dictionary) {
+        return new Builder(dictionary);
+    }
+
+    @Override
+    public List<CarsSet> rows() {
+        return rows;
+    }
+
+    @Override
+    public long getHighestPrice() {
+        if (size == 0) {
+            throw Queries.noHighestPrice();
+        }
+
+        // Scan the price column without touching any object
+        int max = price[0];
+        for (int i = 1; i < size; i++) {
+            if (price[i] > max) {
+                max = price[i];
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public Set<String> getCarsName() {
+        // Mark the distinct name ids first, so each distinct string is hashed only once
+        boolean[] seen = new boolean[dictionary.length];
+        boolean nullSeen = false;
+        for (int i = 0; i < size; i++) {
+            if (name[i] == NULL_ID) {
+                nullSeen = true;
+            } else {
+                seen[name[i]] = true;
+            }
+        }
+
+        Set<String> names = new HashSet<>();
+        for (int id = 0; id < seen.length; id++) {
+            if (seen[id]) {
+                names.add(dictionary[id]);
+            }
+        }
+        if (nullSeen) {
+            names.add(null);
+        }
+        return names;
+    }
+
+    @Override
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        // Pack the inverted price and the row number into one long per row, so a primitive sort
+        // orders by price descending and keeps the load order between equal prices
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) ~price[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        List<CarsSet> cars = new ArrayList<>(size);
+        for (long key : keys) {
+            cars.add(materialize((int) key));
+        }
+        return cars;
+    }
+
+    @Override
+    public List<CarsSet> topByPrice(final int k) {
+        // Run the heap over the price column and materialize only the selected rows
+        int[] top = TopPrices.rows(size, row -> price[row], k);
+        List<CarsSet> cars = new ArrayList<>(top.length);
+        for (int row : top) {
+            cars.add(materialize(row));
+        }
+        return cars;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        // Count the ordinals into a primitive array
+        long[] counts = new long[CAR_TYPES.length];
+        for (int i = 0; i < size; i++) {
+            if (cartype[i] != NULL_ID) {
+                counts[cartype[i]]++;
+            }
+        }
+
+        // Only the car types that actually occur are reported
+        Map<CarsSet.CarType, Long> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            if (counts[carType.ordinal()] > 0) {
+                result.put(carType, counts[carType.ordinal()]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        Map<CarsSet.CarType, Set<CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            result.put(carType, new HashSet<>());
+        }
+        for (int i = 0; i < size; i++) {
+            if (cartype[i] != NULL_ID) {
+                result.get(CAR_TYPES[cartype[i]]).add(materialize(i));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+        Map<CarsSet.CarType, Map<String, CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+        for (int i = 0; i < size; i++) {
+            if (cartype[i] != NULL_ID) {
+                result.computeIfAbsent(CAR_TYPES[cartype[i]], carType -> new TreeMap<>())
+                        .put(string(code[i]), materialize(i));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public IntPredicate matcher(final CarQuery query) {
+        // Ranges are tested on the columns, so only the rows reaching a custom predicate are materialized
+        boolean specifications = query.hasSpecificationRanges();
+        return row -> {
+            if (!query.matchesCar(year[row], price[row], carType(row))) {
+                return false;
+            }
+            if (specifications) {
+                int s = specStart[row];
+                while (s < specStart[row + 1] && !query.matchesSpecification(specPower[s], specWeight[s])) {
+                    s++;
+                }
+                if (s == specStart[row + 1]) {
+                    return false;
+                }
+            }
+            return query.getWhere() == null || query.getWhere().test(materialize(row));
+        };
+    }
+
+    @Override
+    public SpecTable specTable() {
+        // The specification columns are copied as they are, only the manufacturer ids are made dense
+        SpecTable.Builder table = new SpecTable.Builder(specId.length);
+        for (int row = 0; row < size; row++) {
+            for (int s = specStart[row]; s < specStart[row + 1]; s++) {
+                table.add(specPower[s], specWeight[s], carType(row), specName[s], this::string);
+            }
+        }
+        return table.build();
+    }
+
+    /**
+     * Checks that every row has a code and that no two rows share one.
+     * The dictionary holds each string once, so the codes are compared by id.
+     *
+     * @throws IllegalArgumentException if a car has no code or two cars share one
+     */
+    void checkCodes() {
+        BitSet seen = new BitSet(dictionary.length);
+        for (int row = 0; row < size; row++) {
+            if (code[row] == NULL_ID) {
+                throw new IllegalArgumentException("The entity at position " + row + " has no key");
+            }
+            if (seen.get(code[row])) {
+                throw new IllegalArgumentException("Duplicate key " + dictionary[code[row]]);
+            }
+            seen.set(code[row]);
+        }
+    }
+
+    /**
+     * Builds a CarsSet object from the columns of one row.
+     *
+     * @param row the row number
+     * @return a new CarsSet instance holding the values of the row
+     */
+    private CarsSet materialize(final int row) {
+        Set<CarsSet.Specifications> specifications = new HashSet<>();
+        for (int s = specStart[row]; s < specStart[row + 1]; s++) {
+            specifications.add(new CarsSet.Specifications(
+                    string(specId[s]), string(specName[s]), specPower[s], specWeight[s]));
+        }
+
+        CarsSet car = new CarsSet();
+        car.setCode(string(code[row]));
+        car.setName(string(name[row]));
+        car.setYear(year[row]);
+        car.setCartype(carType(row));
+        car.setPrice(price[row]);
+        car.setSpecifications(specifications);
+        return car;
+    }
+
+    private String string(final int id) {
+        return id == NULL_ID ? null : dictionary[id];
+    }
+
+    /**
+     * A read-only list view that materializes each row on access.
+     */
+    final class Rows extends AbstractList<CarsSet> implements RandomAccess {
+        /**
+         * Returns the store this view reads from.
+         *
+         * @return the owning store
+         */
+        ColumnarCarStore store() {
+            return ColumnarCarStore.this;
+        }
+
+        @Override
+        public CarsSet get(final int index) {
+            Objects.checkIndex(index, size);
+            return materialize(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private CarsSet.CarType carType(final int row) {
+        return cartype[row] == NULL_ID ? null : CAR_TYPES[cartype[row]];
+    }
+
+    /**
+     * Appends CarsSet records to growing columns and produces a trimmed, immutable store.
+     */
+    static final class Builder {
+        private final StringDictionary dictionary;
+
+        private int size;
+        private int[] code = new int[16];
+        private int[] name = new int[16];
+        private int[] year = new int[16];
+        private byte[] cartype = new byte[16];
+        private int[] price = new int[16];
+
+        private int specCount;
+        private int[] specStart = new int[17];
+        private int[] specId = new int[16];
+        private int[] specName = new int[16];
+        private int[] specPower = new int[16];
+        private int[] specWeight = new int[16];
+
+        private Builder(final StringDictionary dictionary) {
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * Appends every car of a batch.
+         *
+         * @param cars the cars to append
+         * @return this builder
+         */
+        Builder addAll(@NonNull final Collection<? extends CarsSet> cars) {
+            for (CarsSet car : cars) {
+                add(car);
+            }
+            return this;
+        }
+
+        /**
+         * Appends one car as a new row.
+         *
+         * @param car the car to append
+         * @return this builder
+         */
+        Builder add(@NonNull final CarsSet car) {
+            if (size == code.length) {
+                int capacity = size * 2;
+                code = Arrays.copyOf(code, capacity);
+                name = Arrays.copyOf(name, capacity);
+                year = Arrays.copyOf(year, capacity);
+                cartype = Arrays.copyOf(cartype, capacity);
+                price = Arrays.copyOf(price, capacity);
+                specStart = Arrays.copyOf(specStart, capacity + 1);
+            }
+            code[size] = id(car.getCode());
+            name[size] = id(car.getName());
+            year[size] = car.getYear();
+            cartype[size] = (byte) (car.getCartype() == null ? NULL_ID : car.getCartype().ordinal());
+            price[size] = car.getPrice();
+
+            if (car.getSpecifications() != null) {
+                for (CarsSet.Specifications specification : car.getSpecifications()) {
+                    addSpecification(specification);
+                }
+            }
+            size++;
+            specStart[size] = specCount;
+            return this;
+        }
+
+        /**
+         * Produces the store holding every row appended so far.
+         *
+         * @return a new store
+         */
+        ColumnarCarStore build() {
+            return new ColumnarCarStore(this);
+        }
+
+        private void addSpecification(final CarsSet.Specifications specification) {
+            if (specCount == specId.length) {
+                int capacity = specCount * 2;
+                specId = Arrays.copyOf(specId, capacity);
+                specName = Arrays.copyOf(specName, capacity);
+                specPower = Arrays.copyOf(specPower, capacity);
+                specWeight = Arrays.copyOf(specWeight, capacity);
+            }
+            specId[specCount] = id(specification.getId());
+            specName[specCount] = id(specification.getName());
+            specPower[specCount] = specification.getPower_hp();
+            specWeight[specCount] = specification.getWeight_in_kg();
+            specCount++;
+        }
+
+        private int id(final String value) {
+            return value == null ? NULL_ID : dictionary.id(value);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package cars;
+
+import base.Queries;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * The IndexedCarStore class adds secondary indexes on top of another {@link CarStore}.
+ * The indexes are built once, when the store is created, and refer to rows by their position.
+ * The hash index on <code>code</code> is kept by the repository snapshot itself, since writers maintain it.
+ *
+ * <ul>
+ *     <li>a posting list of rows per <code>CarType</code>,</li>
+ *     <li>a price index holding every row sorted by price, with the prices alongside for binary search.</li>
+ * </ul>
+ *
+ * <p>Both indexes are offered to the {@link CarQuery} planner as access paths, with exact row counts.
+ *
+ * <p>Grouped query results are built from the posting lists as unmodifiable views. Over heap rows they are built
+ * on first use and returned again on every later call. Over a columnar store they are built on every call instead:
+ * keeping them would hold a materialized copy of every row next to the columns, which the columns exist to avoid.
+ */
+final class IndexedCarStore implements CarStore {
+    private static final CarsSet.CarType[] CAR_TYPES = CarsSet.CarType.values();
+
+    private final CarStore delegate;
+    private final List<CarsSet> rows;
+    private final int[][] byCarType;
+    private final int[] byPrice;
+    private final int[] sortedPrices;
+    private final boolean cachesGroups;
+
+    private volatile Map<CarsSet.CarType, Set<CarsSet>> carsByCarTypes;
+    private volatile Map<CarsSet.CarType, Map<String, CarsSet>> carsByCarTypeAndCodes;
+
+    /**
+     * Indexes the rows of the given store.
+     *
+     * @param delegate the store holding the rows
+     */
+    IndexedCarStore(@NonNull final CarStore delegate) {
+        this.delegate = delegate;
+        this.rows = delegate.rows();
+        this.cachesGroups = !(delegate instanceof ColumnarCarStore);
+        int size = rows.size();
+
+        // A columnar store already holds the indexed attributes as columns, so no CarsSet is materialized
+        int[] prices;
+        byte[] carTypes;
+        if (delegate instanceof ColumnarCarStore columnar) {
+            prices = columnar.price;
+            carTypes = columnar.cartype;
+        } else {
+            prices = new int[size];
+            carTypes = new byte[size];
+            for (int row = 0; row < size; row++) {
+                CarsSet car = rows.get(row);
+                prices[row] = car.getPrice();
+                carTypes[row] = ordinal(car.getCartype());
+            }
+        }
+
+        // Rows without a car type are in no posting list
+        int[] typeCounts = new int[CAR_TYPES.length];
+        for (int row = 0; row < size; row++) {
+            if (carTypes[row] != ColumnarCarStore.NULL_ID) {
+                typeCounts[carTypes[row]]++;
+            }
+        }
+
+        // Fill the posting lists in row order
+        this.byCarType = new int[CAR_TYPES.length][];
+        for (int type = 0; type < CAR_TYPES.length; type++) {
+            byCarType[type] = new int[typeCounts[type]];
+        }
+        int[] fill = new int[CAR_TYPES.length];
+        for (int row = 0; row < size; row++) {
+            if (carTypes[row] != ColumnarCarStore.NULL_ID) {
+                byCarType[carTypes[row]][fill[carTypes[row]]++] = row;
+            }
+        }
+
+        // Sort (price, row) pairs packed into longs, which keeps equal prices in row order
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = ((long) prices[row] << 32) | row;
+        }
+        Arrays.sort(keys);
+        this.byPrice = new int[size];
+        this.sortedPrices = new int[size];
+        for (int i = 0; i < size; i++) {
+            byPrice[i] = (int) keys[i];
+            sortedPrices[i] = (int) (keys[i] >> 32);
+        }
+    }
+
+    private static byte ordinal(final CarsSet.CarType carType) {
+        return (byte) (carType == null ? ColumnarCarStore.NULL_ID : carType.ordinal());
+    }
+
+    @Override
+    public List<CarsSet> rows() {
+        return rows;
+    }
+
+    @Override
+    public List<CarsSet> findByPriceBetween(final int min, final int max) {
+        int from = lowerBound(min);
+        int to = max == Integer.MAX_VALUE ? sortedPrices.length : lowerBound(max + 1);
+
+        List<CarsSet> cars = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            cars.add(rows.get(byPrice[i]));
+        }
+        return cars;
+    }
+
+    @Override
+    public long getHighestPrice() {
+        // The last entry of the price index holds the maximum
+        if (sortedPrices.length == 0) {
+            throw Queries.noHighestPrice();
+        }
+        return sortedPrices[sortedPrices.length - 1];
+    }
+
+    @Override
+    public Set<String> getCarsName() {
+        return delegate.getCarsName();
+    }
+
+    @Override
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        return topByPrice(byPrice.length);
+    }
+
+    @Override
+    public List<CarsSet> topByPrice(final int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        int limit = Math.min(k, byPrice.length);
+        List<CarsSet> cars = new ArrayList<>(limit);
+
+        // Walk the price index backwards one run of equal prices at a time,
+        // emitting each run forwards so equal prices stay in row order
+        int end = byPrice.length;
+        while (end > 0 && cars.size() < limit) {
+            int start = end - 1;
+            while (start > 0 && sortedPrices[start - 1] == sortedPrices[end - 1]) {
+                start--;
+            }
+            for (int i = start; i < end && cars.size() < limit; i++) {
+                cars.add(rows.get(byPrice[i]));
+            }
+            end = start;
+        }
+        return cars;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        // The posting list sizes are the counts
+        Map<CarsSet.CarType, Long> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            if (byCarType[carType.ordinal()].length > 0) {
+                result.put(carType, (long) byCarType[carType.ordinal()].length);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        if (!cachesGroups) {
+            return groupByCarTypes();
+        }
+        Map<CarsSet.CarType, Set<CarsSet>> result = carsByCarTypes;
+        if (result == null) {
+            result = groupByCarTypes();
+            carsByCarTypes = result;
+        }
+        return result;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+        if (!cachesGroups) {
+            return groupByCarTypeAndCodes();
+        }
+        Map<CarsSet.CarType, Map<String, CarsSet>> result = carsByCarTypeAndCodes;
+        if (result == null) {
+            result = groupByCarTypeAndCodes();
+            carsByCarTypeAndCodes = result;
+        }
+        return result;
+    }
+
+    @Override
+    public List<AccessPath> accessPaths(final CarQuery query) {
+        List<AccessPath> paths = new ArrayList<>(2);
+        if (query.getCarTypes() != null) {
+            paths.add(carTypePath(query.getCarTypes()));
+        }
+        // The price index also serves an order by price when nothing narrows the price
+        CarQuery.Order order = query.getOrder();
+        if (query.hasPriceRange() || order == CarQuery.Order.PRICE_ASC || order == CarQuery.Order.PRICE_DESC) {
+            int from = lowerBound(query.getMinPrice());
+            int to = Math.max(from,
+                    query.getMaxPrice() == Integer.MAX_VALUE ? sortedPrices.length : lowerBound(query.getMaxPrice() + 1));
+            String description = "price index [" + query.getMinPrice() + ", " + query.getMaxPrice() + "]";
+            paths.add(order == CarQuery.Order.PRICE_DESC
+                    ? new AccessPath(description + " descending", to - from, order, () -> descending(from, to))
+                    : new AccessPath(description, to - from, CarQuery.Order.PRICE_ASC,
+                            () -> IntStream.range(from, to).map(i -> byPrice[i]).iterator()));
+        }
+        return paths;
+    }
+
+    @Override
+    public IntPredicate matcher(final CarQuery query) {
+        return delegate.matcher(query);
+    }
+
+    @Override
+    public SpecTable specTable() {
+        return delegate.specTable();
+    }
+
+    /**
+     * Groups the rows by car type, reading the posting lists.
+     *
+     * @return an unmodifiable map holding every car type, with the unmodifiable set of its cars
+     */
+    private Map<CarsSet.CarType, Set<CarsSet>> groupByCarTypes() {
+        Map<CarsSet.CarType, Set<CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            Set<CarsSet> cars = new HashSet<>();
+            for (int row : byCarType[carType.ordinal()]) {
+                cars.add(rows.get(row));
+            }
+            result.put(carType, Collections.unmodifiableSet(cars));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Groups the rows by car type and then by code, reading the posting lists.
+     *
+     * @return an unmodifiable map holding the car types that have cars, with the unmodifiable map of their cars
+     */
+    private Map<CarsSet.CarType, Map<String, CarsSet>> groupByCarTypeAndCodes() {
+        Map<CarsSet.CarType, Map<String, CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            if (byCarType[carType.ordinal()].length == 0) {
+                continue;
+            }
+            Map<String, CarsSet> cars = new TreeMap<>();
+            for (int row : byCarType[carType.ordinal()]) {
+                CarsSet car = rows.get(row);
+                cars.put(car.getCode(), car);
+            }
+            result.put(carType, Collections.unmodifiableMap(cars));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Creates the access path reading the posting lists of some car types.
+     *
+     * @param carTypes the car types to read
+     * @return the access path, yielding rows in load order
+     */
+    private AccessPath carTypePath(final Set<CarsSet.CarType> carTypes) {
+        int count = 0;
+        for (CarsSet.CarType carType : carTypes) {
+            count += byCarType[carType.ordinal()].length;
+        }
+        if (carTypes.size() == 1) {
+            int[] postings = byCarType[carTypes.iterator().next().ordinal()];
+            return new AccessPath("car type index " + carTypes, count, null, () -> Arrays.stream(postings).iterator());
+        }
+
+        // Several posting lists are concatenated and sorted back into load order when the path is read
+        final int total = count;
+        return new AccessPath("car type index " + carTypes, count, null, () -> {
+            int[] merged = new int[total];
+            int fill = 0;
+            for (CarsSet.CarType carType : carTypes) {
+                int[] postings = byCarType[carType.ordinal()];
+                System.arraycopy(postings, 0, merged, fill, postings.length);
+                fill += postings.length;
+            }
+            Arrays.sort(merged);
+            return Arrays.stream(merged).iterator();
+        });
+    }
+
+    /**
+     * Reads a range of the price index from the highest price down, one run of equal prices at a time,
+     * emitting each run forwards so that equal prices stay in row order.
+     *
+     * @param from the first position of the range
+     * @param to the position after the range
+     * @return the rows of the range
+     */
+    private PrimitiveIterator.OfInt descending(final int from, final int to) {
+        return new PrimitiveIterator.OfInt() {
+            private int start = to;
+            private int end = to;
+            private int next = to;
+
+            @Override
+            public boolean hasNext() {
+                return next < end || start > from;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (next == end) {
+                    // Step down to the run of the next lower price
+                    end = start;
+                    start = end - 1;
+                    while (start > from && sortedPrices[start - 1] == sortedPrices[end - 1]) {
+                        start--;
+                    }
+                    next = start;
+                }
+                return byPrice[next++];
+            }
+        };
+    }
+
+    /**
+     * Finds the first position of the price index whose price is at least the given value.
+     *
+     * @param price the price to search for
+     * @return the position, or the length of the index if every price is lower
+     */
+    private int lowerBound(final int price) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedPrices[mid] < price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
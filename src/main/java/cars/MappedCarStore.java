@@ -0,0 +1,359 @@
+package cars;
+
+import base.Queries;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * The MappedCarStore class keeps cars outside of the Java heap, in a buffer holding the contents of a
+ * {@link BinarySnapshot} file: either the memory-mapped file itself or a direct buffer encoded in memory.
+ *
+ * <p>Queries read the rows through {@link CarRecord} flyweights, so scanning, filtering and sorting never
+ * allocate an object per car; CarsSet objects are only materialized for the rows a query returns,
+ * and each call hands out fresh instances. The heap footprint of the store does not depend on the number of cars.
+ * Codes are looked up by binary search in the code index of the file.
+ */
+final class MappedCarStore implements CarStore {
+    private static final CarsSet.CarType[] CAR_TYPES = CarsSet.CarType.values();
+
+    private final ByteBuffer image;
+    private final int size;
+    private final int dictionaryCount;
+    private final int offsetsStart;
+    private final int bytesStart;
+    private final int rowsStart;
+    private final int specsStart;
+    private final int codesStart;
+
+    private final List<CarsSet> rows = new Rows();
+
+    /**
+     * Creates a store over the contents of a snapshot file whose header, length and checksum have been checked.
+     *
+     * @param image the contents of the file, which must not change afterwards
+     */
+    MappedCarStore(@NonNull final ByteBuffer image) {
+        this.image = image.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.size = this.image.getInt(BinarySnapshot.ROW_COUNT);
+        this.dictionaryCount = this.image.getInt(BinarySnapshot.DICTIONARY_COUNT);
+        int dictionaryBytes = this.image.getInt(BinarySnapshot.DICTIONARY_BYTES);
+        this.offsetsStart = BinarySnapshot.HEADER_SIZE;
+        this.bytesStart = offsetsStart + Integer.BYTES * (dictionaryCount + 1);
+        this.rowsStart = BinarySnapshot.rowsStart(dictionaryCount, dictionaryBytes);
+        this.specsStart = rowsStart + BinarySnapshot.ROW_SIZE * size;
+        this.codesStart = specsStart + BinarySnapshot.SPEC_SIZE * this.image.getInt(BinarySnapshot.SPEC_COUNT);
+    }
+
+    @Override
+    public List<CarsSet> rows() {
+        return rows;
+    }
+
+    /**
+     * Looks up a car by its code with a binary search of the code index.
+     *
+     * @param code the code to look up
+     * @return the car with the given code, or an empty Optional if there is none
+     */
+    Optional<CarsSet> findByCode(@NonNull final String code) {
+        byte[] key = code.getBytes(StandardCharsets.UTF_8);
+        CarRecord record = new CarRecord(this);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            record.moveTo(image.getInt(codesStart + Integer.BYTES * mid));
+            int comparison = compare(record.getCodeId(), key);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return Optional.of(record.toCarsSet());
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public List<CarsSet> findByPriceBetween(final int min, final int max) {
+        // Pack (price, row) of the matches into longs, so a primitive sort keeps equal prices in row order
+        CarRecord record = new CarRecord(this);
+        long[] keys = new long[16];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            int price = record.moveTo(row).getPrice();
+            if (price >= min && price <= max) {
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                }
+                keys[count++] = ((long) price << 32) | row;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        List<CarsSet> cars = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            cars.add(record.moveTo((int) keys[i]).toCarsSet());
+        }
+        return cars;
+    }
+
+    @Override
+    public List<CarsSet> topByPrice(final int k) {
+        CarRecord record = new CarRecord(this);
+        int[] top = TopPrices.rows(size, row -> record.moveTo(row).getPrice(), k);
+        List<CarsSet> cars = new ArrayList<>(top.length);
+        for (int row : top) {
+            cars.add(record.moveTo(row).toCarsSet());
+        }
+        return cars;
+    }
+
+    @Override
+    public long getHighestPrice() {
+        if (size == 0) {
+            throw Queries.noHighestPrice();
+        }
+
+        CarRecord record = new CarRecord(this);
+        int max = Integer.MIN_VALUE;
+        for (int row = 0; row < size; row++) {
+            max = Math.max(max, record.moveTo(row).getPrice());
+        }
+        return max;
+    }
+
+    @Override
+    public Set<String> getCarsName() {
+        // Mark the distinct name ids first, so each distinct string is decoded only once
+        BitSet seen = new BitSet(dictionaryCount);
+        boolean nullSeen = false;
+        CarRecord record = new CarRecord(this);
+        for (int row = 0; row < size; row++) {
+            int id = record.moveTo(row).getNameId();
+            if (id == ColumnarCarStore.NULL_ID) {
+                nullSeen = true;
+            } else {
+                seen.set(id);
+            }
+        }
+
+        Set<String> names = new HashSet<>();
+        for (int id = seen.nextSetBit(0); id >= 0; id = seen.nextSetBit(id + 1)) {
+            names.add(string(id));
+        }
+        if (nullSeen) {
+            names.add(null);
+        }
+        return names;
+    }
+
+    @Override
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        // Pack the inverted price and the row number into one long per row, so a primitive sort
+        // orders by price descending and keeps the load order between equal prices
+        CarRecord record = new CarRecord(this);
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = ((long) ~record.moveTo(row).getPrice() << 32) | row;
+        }
+        Arrays.sort(keys);
+
+        List<CarsSet> cars = new ArrayList<>(size);
+        for (long key : keys) {
+            cars.add(record.moveTo((int) key).toCarsSet());
+        }
+        return cars;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        long[] counts = new long[CAR_TYPES.length];
+        CarRecord record = new CarRecord(this);
+        for (int row = 0; row < size; row++) {
+            CarsSet.CarType carType = record.moveTo(row).getCartype();
+            if (carType != null) {
+                counts[carType.ordinal()]++;
+            }
+        }
+
+        // Only the car types that actually occur are reported
+        Map<CarsSet.CarType, Long> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            if (counts[carType.ordinal()] > 0) {
+                result.put(carType, counts[carType.ordinal()]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        Map<CarsSet.CarType, Set<CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            result.put(carType, new HashSet<>());
+        }
+        CarRecord record = new CarRecord(this);
+        for (int row = 0; row < size; row++) {
+            CarsSet.CarType carType = record.moveTo(row).getCartype();
+            if (carType != null) {
+                result.get(carType).add(record.toCarsSet());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+        Map<CarsSet.CarType, Map<String, CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+        CarRecord record = new CarRecord(this);
+        for (int row = 0; row < size; row++) {
+            if (record.moveTo(row).getCartype() != null) {
+                CarsSet car = record.toCarsSet();
+                result.computeIfAbsent(car.getCartype(), carType -> new TreeMap<>()).put(car.getCode(), car);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public IntPredicate matcher(final CarQuery query) {
+        // Ranges are tested through the flyweight, so only the rows reaching a custom predicate are materialized
+        boolean specifications = query.hasSpecificationRanges();
+        CarRecord record = new CarRecord(this);
+        return row -> {
+            record.moveTo(row);
+            if (!query.matchesCar(record.getYear(), record.getPrice(), record.getCartype())) {
+                return false;
+            }
+            if (specifications) {
+                int s = 0;
+                while (s < record.getSpecificationCount() && !query.matchesSpecification(
+                        record.getSpecificationPower_hp(s), record.getSpecificationWeight_in_kg(s))) {
+                    s++;
+                }
+                if (s == record.getSpecificationCount()) {
+                    return false;
+                }
+            }
+            return query.getWhere() == null || query.getWhere().test(record.toCarsSet());
+        };
+    }
+
+    @Override
+    public SpecTable specTable() {
+        SpecTable.Builder table = new SpecTable.Builder(size);
+        CarRecord record = new CarRecord(this);
+        for (int row = 0; row < size; row++) {
+            record.moveTo(row);
+            for (int s = 0; s < record.getSpecificationCount(); s++) {
+                table.add(record.getSpecificationPower_hp(s), record.getSpecificationWeight_in_kg(s),
+                        record.getCartype(), record.getSpecificationNameId(s), this::string);
+            }
+        }
+        return table.build();
+    }
+
+    /**
+     * Returns the contents of the snapshot file this store reads from.
+     *
+     * @return a little-endian buffer, whose position and limit may be changed by the caller
+     */
+    ByteBuffer image() {
+        return image.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Checks that every row has a code and that no two rows share one.
+     * The dictionary of a snapshot holds each string once, so the codes are compared by id.
+     *
+     * @throws IllegalArgumentException if a car has no code or two cars share one
+     */
+    void checkCodes() {
+        BitSet seen = new BitSet(dictionaryCount);
+        for (int row = 0; row < size; row++) {
+            int id = image.getInt(rowPosition(row));
+            if (id == ColumnarCarStore.NULL_ID) {
+                throw new IllegalArgumentException("The entity at position " + row + " has no key");
+            }
+            if (seen.get(id)) {
+                throw new IllegalArgumentException("Duplicate key " + string(id));
+            }
+            seen.set(id);
+        }
+    }
+
+    int rowPosition(final int row) {
+        Objects.checkIndex(row, size);
+        return rowsStart + BinarySnapshot.ROW_SIZE * row;
+    }
+
+    int specPosition(final int spec) {
+        return specsStart + BinarySnapshot.SPEC_SIZE * spec;
+    }
+
+    /**
+     * Decodes an entry of the dictionary.
+     *
+     * @param id the dictionary id
+     * @return the string, or {@code null} for the null id
+     */
+    String string(final int id) {
+        if (id == ColumnarCarStore.NULL_ID) {
+            return null;
+        }
+        int from = image.getInt(offsetsStart + Integer.BYTES * id);
+        int to = image.getInt(offsetsStart + Integer.BYTES * (id + 1));
+        byte[] bytes = new byte[to - from];
+        image.get(bytesStart + from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares a dictionary entry with UTF-8 bytes, in the order of the code index, without decoding the entry.
+     */
+    private int compare(final int id, final byte[] key) {
+        if (id == ColumnarCarStore.NULL_ID) {
+            return -1;
+        }
+        int from = bytesStart + image.getInt(offsetsStart + Integer.BYTES * id);
+        int length = image.getInt(offsetsStart + Integer.BYTES * (id + 1)) - (from - bytesStart);
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int comparison = Integer.compare(Byte.toUnsignedInt(image.get(from + i)), Byte.toUnsignedInt(key[i]));
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * A read-only list view that materializes each row on access.
+     */
+    final class Rows extends AbstractList<CarsSet> implements RandomAccess {
+        /**
+         * Returns the store this view reads from.
+         *
+         * @return the owning store
+         */
+        MappedCarStore store() {
+            return MappedCarStore.this;
+        }
+
+        @Override
+        public CarsSet get(final int index) {
+            return new CarRecord(MappedCarStore.this).moveTo(index).toCarsSet();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package cars;
+
+import base.ParallelScan;
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * The ParallelCarStore class answers the queries of another {@link CarStore} with fork-join scans
+ * once it holds at least a threshold number of rows.
+ * Smaller stores are left to the sequential delegate, so they do not pay the fork overhead.
+ */
+final class ParallelCarStore implements CarStore {
+    private final CarStore delegate;
+    private final int threshold;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a parallel store.
+     *
+     * @param delegate the sequential store holding the rows
+     * @param threshold the number of rows from which queries run in parallel
+     * @param pool the pool running the scans
+     */
+    ParallelCarStore(@NonNull final CarStore delegate, final int threshold, @NonNull final ForkJoinPool pool) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.pool = pool;
+    }
+
+    @Override
+    public List<CarsSet> rows() {
+        return delegate.rows();
+    }
+
+    @Override
+    public long getHighestPrice() {
+        return scan(CarCollectors.highestPrice(), delegate::getHighestPrice);
+    }
+
+    @Override
+    public Set<String> getCarsName() {
+        return scan(CarCollectors.carsName(), delegate::getCarsName);
+    }
+
+    @Override
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        return scan(CarCollectors.orderByPriceDesc(), delegate::getCarsOrderByPriceDesc);
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        return scan(CarCollectors.countByCarType(), delegate::getCountOfCarsByCarType);
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        return scan(CarCollectors.carsByCarTypes(), delegate::getCarsByCarTypes);
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+        return scan(CarCollectors.carsByCarTypeAndCodes(), delegate::getCarsByCarTypeAndCodes);
+    }
+
+    /**
+     * Runs a query in parallel above the threshold and sequentially below it.
+     *
+     * @param collector the parallel form of the query
+     * @param sequential the sequential form of the query
+     * @param <R> the result type
+     * @return the query result
+     */
+    private <R> R scan(final Collector<CarsSet, ?, R> collector, final Supplier<R> sequential) {
+        List<CarsSet> rows = delegate.rows();
+        return rows.size() < threshold ? sequential.get() : ParallelScan.collect(rows, collector, pool);
+    }
+}
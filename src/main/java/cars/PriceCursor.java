@@ -0,0 +1,34 @@
+package cars;
+
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * The PriceCursor class marks a position in the price ordering used by {@link CarSetRepository#pageByPrice}.
+ * Cars are ordered by price in descending order and, between equal prices, in load order,
+ * so a price and the code of the car at that position, which is unique within the repository,
+ * identify where the next page starts, even after the repository changes.
+ */
+@Value
+public class PriceCursor {
+    /**
+     * The price of the last car of the previous page.
+     */
+    int price;
+
+    /**
+     * The code of the last car of the previous page.
+     */
+    @NonNull
+    String code;
+
+    /**
+     * Creates the cursor pointing right after the given car.
+     *
+     * @param car the last car of a page
+     * @return the cursor of the next page
+     */
+    public static PriceCursor after(@NonNull final CarsSet car) {
+        return new PriceCursor(car.getPrice(), car.getCode());
+    }
+}
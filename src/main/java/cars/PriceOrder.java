@@ -0,0 +1,118 @@
+package cars;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The PriceOrder class is a price-sorted view of the rows of one snapshot, used for keyset pagination.
+ * Rows are ordered by price in descending order and, between equal prices, in load order,
+ * which is the order of {@link CarSetRepository#getCarsOrderByPriceDesc()}.
+ *
+ * <p>The view is built once per snapshot. A page binary-searches the cursor's price and then looks for the cursor's
+ * code among the cars of that price, so it costs O(log n + r + k), where r is the number of cars sharing that price,
+ * instead of a full sort.
+ *
+ * <p>The repository rejects missing and duplicate codes, so the code names exactly one car and every page moves past it.
+ * Commits keep the relative load order of the cars they do not remove, so a cursor still resumes right after
+ * its car in a later snapshot. If that car was removed or repriced in between, the page restarts at the first car
+ * of the cursor's price: cars of that price may then be repeated, but none is skipped.
+ */
+final class PriceOrder {
+    private final List<CarsSet> rows;
+    private final int[] order;
+    private final int[] prices;
+    private final String[] codes;
+
+    /**
+     * Sorts the given rows.
+     *
+     * @param rows the rows of a snapshot, each with a unique code
+     */
+    PriceOrder(@NonNull final List<CarsSet> rows) {
+        this.rows = rows;
+        int size = rows.size();
+
+        // Read each row once, then sort (inverted price, row) pairs packed into longs, which keeps equal prices
+        // in row order
+        long[] keys = new long[size];
+        String[] rowCodes = new String[size];
+        for (int row = 0; row < size; row++) {
+            CarsSet car = rows.get(row);
+            rowCodes[row] = car.getCode();
+            keys[row] = ((long) ~car.getPrice() << 32) | row;
+        }
+        Arrays.sort(keys);
+
+        this.order = new int[size];
+        this.prices = new int[size];
+        this.codes = new String[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+            prices[i] = ~(int) (keys[i] >> 32);
+            codes[i] = rowCodes[order[i]];
+        }
+    }
+
+    /**
+     * Returns the page of cars that follows a cursor.
+     *
+     * @param after the position to start after, or {@code null} for the first page
+     * @param limit the highest number of cars on the page
+     * @return the page
+     */
+    PricePage page(final PriceCursor after, final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        int from = after == null ? 0 : resume(after);
+        int to = (int) Math.min(order.length, (long) from + limit);
+
+        List<CarsSet> cars = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            cars.add(rows.get(order[i]));
+        }
+        PriceCursor next = to < order.length ? new PriceCursor(prices[to - 1], codes[to - 1]) : null;
+        return new PricePage(cars, next);
+    }
+
+    /**
+     * Finds the position the page after a cursor starts at.
+     *
+     * @param cursor the cursor to resume from
+     * @return the position right after the cursor's car, the first position of the cursor's price if that car
+     *         no longer has it, or the number of rows if the cursor is past the end
+     */
+    private int resume(final PriceCursor cursor) {
+        int from = firstBelow(cursor.getPrice() + 1L);
+        int to = firstBelow(cursor.getPrice());
+        for (int i = from; i < to; i++) {
+            if (codes[i].equals(cursor.getCode())) {
+                return i + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Finds the first position whose price is lower than a bound.
+     *
+     * @param bound the exclusive upper bound of the prices to find
+     * @return the position, or the number of rows if every price reaches the bound
+     */
+    private int firstBelow(final long bound) {
+        int low = 0;
+        int high = order.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (prices[mid] >= bound) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,31 @@
+package cars;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * The PricePage class holds one page of cars in descending price order, as returned by
+ * {@link CarSetRepository#pageByPrice}.
+ */
+@Value
+public class PricePage {
+    /**
+     * The cars of this page, most expensive first.
+     */
+    List<CarsSet> cars;
+
+    /**
+     * The cursor of the following page, or {@code null} if this is the last page.
+     */
+    PriceCursor next;
+
+    /**
+     * Tells whether more cars follow this page.
+     *
+     * @return true if {@link #getNext()} can be used to fetch another page
+     */
+    public boolean hasNext() {
+        return next != null;
+    }
+}
@@ -0,0 +1,154 @@
+package cars;
+
+import base.ParallelScan;
+import base.Queries;
+import base.SharedScan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collector;
+
+/**
+ * The QueryBatch class holds the results of several {@link Queries} methods computed together
+ * by {@link CarSetRepository#batch(Set)}: every car is read once and fed to the accumulator of each query
+ * of the batch, instead of once per query.
+ *
+ * <p>The results answer the same {@link Queries} methods and equal what the repository returns for them.
+ * Asking for a query that was not part of the batch throws an {@link IllegalStateException}.
+ */
+public final class QueryBatch implements Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType> {
+    private final long version;
+    private final Map<Query, Object> results;
+
+    QueryBatch(final long version, final Map<Query, Object> results) {
+        this.version = version;
+        this.results = results;
+    }
+
+    /**
+     * Computes queries in one pass over cars.
+     *
+     * @param cars the cars to scan, which must support fast random access
+     * @param queries the queries to compute
+     * @param parallel whether the pass is split across the fork-join pool
+     * @param pool the pool running a parallel pass
+     * @return the result of each query
+     */
+    static Map<Query, Object> collect(
+            final List<CarsSet> cars,
+            final Set<Query> queries,
+            final boolean parallel,
+            final ForkJoinPool pool) {
+        Map<Query, Object> results = new EnumMap<>(Query.class);
+        if (queries.isEmpty()) {
+            return results;
+        }
+        List<Query> order = new ArrayList<>(queries);
+        List<Collector<CarsSet, ?, ?>> collectors = new ArrayList<>(order.size());
+        for (Query query : order) {
+            collectors.add(query.collector());
+        }
+        Collector<CarsSet, ?, List<Object>> shared = SharedScan.of(collectors);
+        List<Object> values = parallel ? ParallelScan.collect(cars, shared, pool) : cars.stream().collect(shared);
+        for (int i = 0; i < order.size(); i++) {
+            results.put(order.get(i), values.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the version of the snapshot the batch ran against.
+     *
+     * @return the snapshot version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the queries the batch computed.
+     *
+     * @return the queries, in declaration order
+     */
+    public Set<Query> getQueries() {
+        return Collections.unmodifiableSet(results.keySet());
+    }
+
+    @Override
+    public long getHighestPrice() {
+        return this.<OptionalLong>result(Query.HIGHEST_PRICE).orElseThrow(Queries::noHighestPrice);
+    }
+
+    @Override
+    public Set<String> getCarsName() {
+        return result(Query.CARS_NAME);
+    }
+
+    @Override
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        return result(Query.ORDER_BY_PRICE_DESC);
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        return result(Query.COUNT_BY_CAR_TYPE);
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        return result(Query.CARS_BY_CAR_TYPES);
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+        return result(Query.CARS_BY_CAR_TYPE_AND_CODES);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> R result(final Query query) {
+        if (!results.containsKey(query)) {
+            throw new IllegalStateException(query + " was not part of the batch");
+        }
+        return (R) results.get(query);
+    }
+
+    /**
+     * The queries a batch can compute, one per {@link Queries} method.
+     */
+    public enum Query {
+        HIGHEST_PRICE,
+        CARS_NAME,
+        ORDER_BY_PRICE_DESC,
+        COUNT_BY_CAR_TYPE,
+        CARS_BY_CAR_TYPES,
+        CARS_BY_CAR_TYPE_AND_CODES;
+
+        /**
+         * Returns the collector computing this query.
+         */
+        Collector<CarsSet, ?, ?> collector() {
+            switch (this) {
+                case HIGHEST_PRICE:
+                    // The batch keeps an empty result, so that only asking for the price fails
+                    return CarCollectors.maxPrice();
+                case CARS_NAME:
+                    return CarCollectors.carsName();
+                case ORDER_BY_PRICE_DESC:
+                    return CarCollectors.orderByPriceDesc();
+                case COUNT_BY_CAR_TYPE:
+                    return CarCollectors.countByCarType();
+                case CARS_BY_CAR_TYPES:
+                    return CarCollectors.carsByCarTypes();
+                case CARS_BY_CAR_TYPE_AND_CODES:
+                default:
+                    return CarCollectors.carsByCarTypeAndCodes();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package cars;
+
+import base.LatencyHistogram;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The QueryLoadGenerator class measures a {@link QueryServer} under load: a number of concurrent clients,
+ * each on its own virtual thread, send requests back to back for a fixed duration,
+ * and the report gives the throughput and the latency percentiles.
+ *
+ * <p>Run it as a program to serve a generated catalog locally and load it:
+ * {@code QueryLoadGenerator [clients] [seconds] [path] [cars]}, by default
+ * 2000 clients for 10 seconds on {@code /highest-price} over 100000 cars.
+ */
+public final class QueryLoadGenerator {
+
+    private QueryLoadGenerator() {
+    }
+
+    /**
+     * Loads a URI with concurrent clients.
+     *
+     * @param target the URI every client requests
+     * @param clients the number of concurrent clients
+     * @param duration how long the clients keep sending requests
+     * @return the report of the run
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public static Report run(
+            @NonNull final URI target,
+            final int clients,
+            @NonNull final Duration duration) throws InterruptedException {
+        if (clients <= 0) {
+            throw new IllegalArgumentException("The number of clients must be positive, got " + clients);
+        }
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(clients);
+        HttpRequest request = HttpRequest.newBuilder(target).GET().build();
+
+        long began;
+        long ended;
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(threads)
+                     .build()) {
+            for (int i = 0; i < clients; i++) {
+                threads.execute(() -> {
+                    try {
+                        start.await();
+                        long deadline = System.nanoTime() + duration.toNanos();
+                        for (long sent = System.nanoTime(); sent < deadline; sent = System.nanoTime()) {
+                            try {
+                                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                                if (response.statusCode() == 200) {
+                                    latencies.record(System.nanoTime() - sent);
+                                } else {
+                                    errors.increment();
+                                }
+                            } catch (IOException e) {
+                                errors.increment();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+            }
+            began = System.nanoTime();
+            start.countDown();
+            // The client runs on the executor too, so it must stay open until every client has passed its deadline
+            finished.await();
+            ended = System.nanoTime();
+        }
+        return new Report(
+                clients,
+                latencies.getCount(),
+                errors.sum(),
+                (ended - began) / 1e9,
+                latencies.getValueAtPercentile(50) / 1_000,
+                latencies.getValueAtPercentile(99) / 1_000,
+                latencies.getMax() / 1_000);
+    }
+
+    /**
+     * Serves a generated catalog locally and loads it.
+     *
+     * @param args the number of clients, the duration in seconds, the path to request and the number of cars
+     * @throws IOException if the server cannot start
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String path = args.length > 2 ? args[2] : "/highest-price";
+        int cars = args.length > 3 ? Integer.parseInt(args[3]) : 100_000;
+
+        // Read once by the JDK server on first use; see QueryServer
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        CarSetRepository repo = new CarSetRepository(new CarsSetGenerator(42).generate(cars), RepositoryConfig.DEFAULT);
+        try (QueryServer server = QueryServer.start(repo, new InetSocketAddress("127.0.0.1", 0))) {
+            URI target = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+            System.out.println(run(target, clients, Duration.ofSeconds(seconds)));
+        }
+    }
+
+    /**
+     * The outcome of a load run. Latencies are in microseconds and only cover successful requests.
+     */
+    @Value
+    public static class Report {
+        int clients;
+        long requests;
+        long errors;
+        double seconds;
+        long p50Micros;
+        long p99Micros;
+        long maxMicros;
+
+        /**
+         * Returns the number of successful requests per second.
+         *
+         * @return the throughput
+         */
+        public double getThroughput() {
+            return requests / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d clients: %d requests in %.1f s (%.0f/s), %d errors, "
+                            + "p50 %d us, p99 %d us, max %d us",
+                    clients, requests, seconds, getThroughput(), errors, p50Micros, p99Micros, maxMicros);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cars;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * The QueryPlanner class runs {@link CarQuery} instances against a {@link CarStore}.
+ *
+ * <p>The plan reads the access path yielding the fewest rows among the full scan and the indexes
+ * offered by the store; between equal counts it prefers a path that already delivers the requested order.
+ * Every row read is tested against all the filters. When the rows arrive in the requested order,
+ * reading stops as soon as the limit is reached; otherwise the matches are sorted and then cut.
+ */
+final class QueryPlanner {
+
+    private QueryPlanner() {
+    }
+
+    /**
+     * Runs a query.
+     *
+     * @param store the store to query
+     * @param query the query
+     * @param projection the function applied to every result
+     * @param <R> the type of the results
+     * @return the projected results
+     */
+    static <R> List<R> run(
+            final CarStore store,
+            final CarQuery query,
+            final Function<? super CarsSet, ? extends R> projection) {
+        AccessPath path = plan(store, query);
+        List<CarsSet> rows = store.rows();
+        IntPredicate matcher = store.matcher(query);
+        int limit = query.getLimit();
+        boolean ordered = delivers(path, query);
+
+        List<CarsSet> cars = new ArrayList<>();
+        PrimitiveIterator.OfInt candidates = path.getRows().get();
+        while (candidates.hasNext() && (!ordered || cars.size() < limit)) {
+            int row = candidates.nextInt();
+            if (matcher.test(row)) {
+                cars.add(rows.get(row));
+            }
+        }
+        if (!ordered) {
+            // List.sort is stable, so equal cars keep the load order of the path
+            cars.sort(query.getOrder().comparator());
+            if (cars.size() > limit) {
+                cars = cars.subList(0, limit);
+            }
+        }
+
+        List<R> results = new ArrayList<>(cars.size());
+        for (CarsSet car : cars) {
+            results.add(projection.apply(car));
+        }
+        return results;
+    }
+
+    /**
+     * Describes the plan of a query.
+     *
+     * @param store the store to query
+     * @param query the query
+     * @return a one-line description of the access path and of the steps after it
+     */
+    static String explain(final CarStore store, final CarQuery query) {
+        AccessPath path = plan(store, query);
+        StringBuilder plan = new StringBuilder(path.getDescription())
+                .append(" (").append(path.getEstimate()).append(" rows), filter");
+        if (!delivers(path, query)) {
+            plan.append(", sort by ").append(query.getOrder());
+        }
+        if (query.getLimit() != Integer.MAX_VALUE) {
+            plan.append(delivers(path, query) ? ", stop at " : ", cut at ").append(query.getLimit());
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Chooses the access path of a query.
+     *
+     * @param store the store to query
+     * @param query the query
+     * @return the path yielding the fewest rows
+     */
+    static AccessPath plan(final CarStore store, final CarQuery query) {
+        AccessPath best = AccessPath.scan(store.rows().size());
+        for (AccessPath path : store.accessPaths(query)) {
+            if (path.getEstimate() < best.getEstimate()
+                    || path.getEstimate() == best.getEstimate() && delivers(path, query) && !delivers(best, query)) {
+                best = path;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Tells whether an access path yields its rows in the order a query requests.
+     */
+    private static boolean delivers(final AccessPath path, final CarQuery query) {
+        return query.getOrder() == null || query.getOrder() == path.getOrder();
+    }
+}
@@ -0,0 +1,285 @@
+package cars;
+
+import base.Repository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The QueryServer class exposes the {@link base.Queries} methods of a {@link CarSetRepository} over HTTP,
+ * on the {@link HttpServer} of the JDK. Every request runs on its own virtual thread, so thousands of
+ * concurrent clients cost no more than their sockets.
+ *
+ * <p>The server answers {@code GET} requests with JSON:
+ * <ul>
+ *     <li><code>/highest-price</code>: the highest price, or 404 when the repository is empty.</li>
+ *     <li><code>/names</code>: the unique names of the cars.</li>
+ *     <li><code>/order-by-price-desc</code>: the cars sorted by price in descending order;
+ *         <code>?limit=k</code> returns the k most expensive ones without sorting them all.</li>
+ *     <li><code>/count-by-car-type</code>: the number of cars of each car type.</li>
+ *     <li><code>/by-car-type</code>: the cars grouped by car type.</li>
+ *     <li><code>/by-car-type-and-code</code>: the cars grouped by car type and keyed by code.</li>
+ *     <li><code>/cars/{code}</code>: the car with a code, or 404.</li>
+ * </ul>
+ *
+ * <p>Results are written element by element to the response stream through a {@link JsonGenerator}
+ * and sent chunked, so a large result is never turned into one string or byte array first.
+ * A failure while a body is being written drops the connection before the last chunk,
+ * so the client sees an incomplete response rather than a well-formed, truncated one.
+ *
+ * <p>Start the JVM with {@code -Dsun.net.httpserver.nodelay=true}: without TCP_NODELAY, the chunk ending a small
+ * response waits for the delayed acknowledgement of the headers, which adds tens of milliseconds to every request.
+ * The JDK server reads that property once for the whole JVM, so the server leaves it to the application.
+ */
+public final class QueryServer implements AutoCloseable {
+    // Large enough to queue the connection bursts of thousands of clients
+    private static final int BACKLOG = 4096;
+    // How long close() waits for the requests in progress before cutting them off
+    private static final int DRAIN_SECONDS = 5;
+    private static final ObjectWriter CAR_WRITER = Repository.MAPPER.writerFor(CarsSet.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private static final String[] CAR_TYPE_NAMES = carTypeNames();
+
+    private final CarSetRepository repository;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private QueryServer(final CarSetRepository repository, final InetSocketAddress address) throws IOException {
+        this.repository = repository;
+        this.server = HttpServer.create(address, BACKLOG);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts serving a repository.
+     *
+     * @param repository the repository to query
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the running server, to close when done
+     * @throws IOException if the address cannot be bound
+     */
+    public static QueryServer start(
+            @NonNull final CarSetRepository repository,
+            @NonNull final InetSocketAddress address) throws IOException {
+        QueryServer server = new QueryServer(repository, address);
+        server.server.start();
+        return server;
+    }
+
+    /**
+     * Returns the address the server listens on.
+     *
+     * @return the bound address, with the actual port
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting requests, lets the requests in progress finish and releases the port.
+     * New requests are refused from then on, and requests still running after five seconds are cut off.
+     */
+    @Override
+    public void close() {
+        // The executor refuses new exchanges first, so the handlers running now still write their whole response;
+        // stopping the server with a delay instead would wait out the full delay even when idle
+        executor.shutdown();
+        try {
+            executor.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            dispatch(exchange);
+        } catch (IOException | RuntimeException e) {
+            if (exchange.getResponseCode() != -1) {
+                // The headers are gone: leaving the exchange open makes the server drop the connection
+                // without the last chunk, so the client cannot take the partial body for a complete one
+                throw e;
+            }
+            // A malformed or negative limit; NumberFormatException is one too
+            error(exchange, e instanceof IllegalArgumentException ? 400 : 500,
+                    e instanceof IllegalArgumentException ? e.getMessage() : e.toString());
+        }
+        exchange.close();
+    }
+
+    private void dispatch(final HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "GET");
+            error(exchange, 405, "Only GET is supported");
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        String limit = parameter(exchange.getRequestURI().getRawQuery(), "limit");
+        switch (path) {
+            case "/highest-price":
+                OptionalLong highestPrice = repository.findHighestPrice();
+                if (highestPrice.isEmpty()) {
+                    error(exchange, 404, "The repository is empty");
+                    return;
+                }
+                respond(exchange, json -> json.writeNumber(highestPrice.getAsLong()));
+                return;
+            case "/names":
+                Set<String> names = repository.getCarsName();
+                respond(exchange, json -> writeStrings(json, names));
+                return;
+            case "/order-by-price-desc":
+                List<CarsSet> cars = limit == null
+                        ? repository.getCarsOrderByPriceDesc()
+                        : repository.topByPrice(Integer.parseInt(limit));
+                respond(exchange, json -> writeCars(json, cars));
+                return;
+            case "/count-by-car-type":
+                Map<CarsSet.CarType, Long> counts = repository.getCountOfCarsByCarType();
+                respond(exchange, json -> {
+                    json.writeStartObject();
+                    for (Map.Entry<CarsSet.CarType, Long> count : counts.entrySet()) {
+                        json.writeNumberField(CAR_TYPE_NAMES[count.getKey().ordinal()], count.getValue());
+                    }
+                    json.writeEndObject();
+                });
+                return;
+            case "/by-car-type":
+                Map<CarsSet.CarType, Set<CarsSet>> byCarType = repository.getCarsByCarTypes();
+                respond(exchange, json -> {
+                    json.writeStartObject();
+                    for (Map.Entry<CarsSet.CarType, Set<CarsSet>> group : byCarType.entrySet()) {
+                        json.writeFieldName(CAR_TYPE_NAMES[group.getKey().ordinal()]);
+                        writeCars(json, group.getValue());
+                    }
+                    json.writeEndObject();
+                });
+                return;
+            case "/by-car-type-and-code":
+                Map<CarsSet.CarType, Map<String, CarsSet>> byCode = repository.getCarsByCarTypeAndCodes();
+                respond(exchange, json -> {
+                    json.writeStartObject();
+                    for (Map.Entry<CarsSet.CarType, Map<String, CarsSet>> group : byCode.entrySet()) {
+                        json.writeObjectFieldStart(CAR_TYPE_NAMES[group.getKey().ordinal()]);
+                        for (Map.Entry<String, CarsSet> car : group.getValue().entrySet()) {
+                            json.writeFieldName(car.getKey());
+                            CAR_WRITER.writeValue(json, car.getValue());
+                        }
+                        json.writeEndObject();
+                    }
+                    json.writeEndObject();
+                });
+                return;
+            default:
+                if (path.startsWith("/cars/") && path.length() > "/cars/".length()) {
+                    Optional<CarsSet> car = repository.findByCode(path.substring("/cars/".length()));
+                    if (car.isEmpty()) {
+                        error(exchange, 404, "No car has this code");
+                        return;
+                    }
+                    respond(exchange, json -> CAR_WRITER.writeValue(json, car.get()));
+                    return;
+                }
+                error(exchange, 404, "Unknown query " + path);
+        }
+    }
+
+    /**
+     * Sends a successful response, streaming the body written by the body writer.
+     */
+    private static void respond(final HttpExchange exchange, final Body body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // A length of 0 sends the body chunked, as it is written
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        JsonGenerator json = Repository.MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        // Neither the generator nor the stream is closed if writing fails, which would end the body cleanly
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        body.write(json);
+        json.close();
+        out.close();
+    }
+
+    private static void error(final HttpExchange exchange, final int status, final String message) throws IOException {
+        byte[] body = Repository.MAPPER.writeValueAsBytes(Map.of("error", String.valueOf(message)));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void writeStrings(final JsonGenerator json, final Collection<String> values) throws IOException {
+        json.writeStartArray();
+        for (String value : values) {
+            json.writeString(value);
+        }
+        json.writeEndArray();
+    }
+
+    private static void writeCars(final JsonGenerator json, final Collection<CarsSet> cars) throws IOException {
+        json.writeStartArray();
+        for (CarsSet car : cars) {
+            CAR_WRITER.writeValue(json, car);
+        }
+        json.writeEndArray();
+    }
+
+    /**
+     * Returns the value of a query string parameter, or {@code null} if it is absent.
+     */
+    private static String parameter(final String query, final String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                return URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the JSON name of every car type, as it appears in {@code data.json}.
+     */
+    private static String[] carTypeNames() {
+        CarsSet.CarType[] carTypes = CarsSet.CarType.values();
+        String[] names = new String[carTypes.length];
+        for (CarsSet.CarType carType : carTypes) {
+            names[carType.ordinal()] = Repository.MAPPER.convertValue(carType, String.class);
+        }
+        return names;
+    }
+
+    /**
+     * Writes the body of a response.
+     */
+    @FunctionalInterface
+    private interface Body {
+        void write(JsonGenerator json) throws IOException;
+    }
+}
@@ -0,0 +1,33 @@
+package cars;
+
+import lombok.Value;
+
+/**
+ * The ReloadResult class counts the changes a reload applied to a {@link CarSetRepository}.
+ */
+@Value
+public class ReloadResult {
+    /**
+     * The number of cars whose code was new.
+     */
+    int inserted;
+
+    /**
+     * The number of cars whose values changed.
+     */
+    int updated;
+
+    /**
+     * The number of cars no longer present in the source.
+     */
+    int removed;
+
+    /**
+     * Tells whether the reload changed anything.
+     *
+     * @return true if no car was inserted, updated or removed
+     */
+    public boolean isEmpty() {
+        return inserted == 0 && updated == 0 && removed == 0;
+    }
+}
@@ -0,0 +1,105 @@
+package cars;
+
+import base.JsonStreamLoader;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The RepositoryConfig class collects the options used when constructing a {@link CarSetRepository}.
+ * Instances are immutable and created through {@link #builder()}; unset options keep their defaults.
+ *
+ * <p><strong>Options:</strong>
+ * <ul>
+ *     <li><code>batchSize</code>: The number of records read from JSON before they are handed to the repository.</li>
+ *     <li><code>progress</code>: The listener notified while the JSON source is being read.</li>
+ *     <li><code>storage</code>: The storage engine holding the cars and answering the queries.</li>
+ *     <li><code>indexed</code>: Whether secondary indexes on code, car type and price are built at load time.
+ *         The mapped storage engine has its own code index and builds no others.</li>
+ *     <li><code>parallelThreshold</code>: The number of cars from which heap scans run on the fork-join pool.</li>
+ *     <li><code>instrumented</code>: Whether query latencies and allocations are measured from the start.</li>
+ * </ul>
+ */
+@Getter
+@Builder
+public class RepositoryConfig {
+    /**
+     * The configuration used when no options are given.
+     */
+    public static final RepositoryConfig DEFAULT = builder().build();
+
+    /**
+     * The number of records read from JSON before they are handed to the repository.
+     */
+    @Builder.Default
+    private final int batchSize = JsonStreamLoader.DEFAULT_BATCH_SIZE;
+
+    /**
+     * The listener notified while the JSON source is being read.
+     */
+    @NonNull
+    @Builder.Default
+    private final JsonStreamLoader.ProgressListener progress = JsonStreamLoader.ProgressListener.NONE;
+
+    /**
+     * The storage engine holding the cars and answering the queries.
+     */
+    @NonNull
+    @Builder.Default
+    private final Storage storage = Storage.HEAP;
+
+    /**
+     * Whether secondary indexes on code, car type and price are built at load time.
+     */
+    @Builder.Default
+    private final boolean indexed = true;
+
+    /**
+     * The number of cars from which scans of the heap storage engine are split across the common fork-join pool.
+     * Use {@link Integer#MAX_VALUE} to always scan sequentially.
+     */
+    @Builder.Default
+    private final int parallelThreshold = 100_000;
+
+    /**
+     * Whether query latencies and allocations are measured from the start.
+     * Measuring can also be switched on later through {@link CarSetRepository#getInstrumentation()}.
+     */
+    private final boolean instrumented;
+
+    /**
+     * Creates a streaming loader for CarsSet records using these options.
+     *
+     * @return a new loader
+     */
+    public JsonStreamLoader<CarsSet> loader() {
+        return new JsonStreamLoader<>(CarsSet.class, batchSize, progress);
+    }
+
+    /**
+     * The Storage enum lists the storage engines a {@link CarSetRepository} can run on.
+     */
+    public enum Storage {
+
+        /**
+         * Keeps CarsSet objects in a list on the heap and scans them for every query.
+         */
+        HEAP,
+
+        /**
+         * Keeps cars in primitive, dictionary-coded columns and materializes objects only for query results.
+         * Grouped query results are therefore built again on every call, even with indexes, rather than keeping
+         * a materialized copy of every car next to the columns.
+         */
+        COLUMNAR,
+
+        /**
+         * Keeps cars outside of the Java heap, in a memory-mapped snapshot file or a direct buffer,
+         * and reads them through flyweights, materializing objects only for query results.
+         * Writes are not incremental: every commit materializes the whole catalog on the heap, applies its changes
+         * and encodes a new direct buffer, so each write costs heap and time in proportion to the catalog.
+         * It suits catalogs that are loaded once and then mostly read.
+         */
+        MAPPED
+    }
+}
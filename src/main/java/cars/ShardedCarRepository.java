@@ -0,0 +1,465 @@
+package cars;
+
+import base.Queries;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * The ShardedCarRepository class partitions cars across independent {@link CarSetRepository} shards,
+ * by car type or by a hash of the code, and answers every query by scatter-gather:
+ * each shard computes its part on its own thread, and the parts are then combined.
+ *
+ * <ul>
+ *     <li>Sorted results are merged with a k-way merge of the sorted parts; equal prices follow the shard order.</li>
+ *     <li>Grouped results are combined group by group, and a group held by a single shard is passed on without
+ *         copying. Grouped results are always unmodifiable, whatever the partitioning.</li>
+ *     <li>Counts and maxima are added up or compared.</li>
+ * </ul>
+ *
+ * <p>Each shard commits on its own, so a query reads the latest version of every shard rather than one
+ * version of the whole catalog, and a change that moves a car to another shard is not atomic:
+ * the car is removed from its previous shard first, so a query running in between misses it but never sees it twice.
+ */
+public final class ShardedCarRepository implements Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType>,
+        AutoCloseable {
+    private static final CarsSet.CarType[] CAR_TYPES = CarsSet.CarType.values();
+
+    private final Partitioning partitioning;
+    private final List<CarSetRepository> shards;
+    private final List<ExecutorService> threads;
+
+    /**
+     * Creates a sharded repository.
+     *
+     * @param cars the cars to distribute
+     * @param shardCount the number of shards, for instance the number of available processors
+     * @param partitioning how cars are assigned to shards
+     * @param config the options of every shard
+     * @throws IllegalArgumentException if shardCount is not positive
+     */
+    public ShardedCarRepository(
+            @NonNull final Collection<CarsSet> cars,
+            final int shardCount,
+            @NonNull final Partitioning partitioning,
+            @NonNull final RepositoryConfig config) {
+        this(partition(cars, shardCount, partitioning), partitioning, config);
+    }
+
+    private ShardedCarRepository(
+            final List<List<CarsSet>> parts,
+            final Partitioning partitioning,
+            final RepositoryConfig config) {
+        this.partitioning = partitioning;
+        this.threads = new ArrayList<>(parts.size());
+        for (int shard = 0; shard < parts.size(); shard++) {
+            final int index = shard;
+            threads.add(Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "car-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+        // Every shard builds its storage engine and indexes on its own thread
+        try {
+            this.shards = Collections.unmodifiableList(
+                    gather(parts.size(), shard -> new CarSetRepository(parts.get(shard), config)));
+        } catch (RuntimeException | Error e) {
+            // Nobody can close a repository that failed to construct, so stop its threads and the other shard builds
+            threads.forEach(ExecutorService::shutdownNow);
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a sharded repository from a JSON array, read in batches and routed to the shards as it streams.
+     *
+     * @param json the JSON array of cars, closed when loading finishes
+     * @param shardCount the number of shards
+     * @param partitioning how cars are assigned to shards
+     * @param config the options of every shard, whose batch size and progress listener apply to the load
+     * @return the sharded repository
+     * @throws IOException if an I/O error happens or the source is not a JSON array
+     * @throws IllegalArgumentException if shardCount is not positive
+     */
+    public static ShardedCarRepository load(
+            @NonNull final InputStream json,
+            final int shardCount,
+            @NonNull final Partitioning partitioning,
+            @NonNull final RepositoryConfig config) throws IOException {
+        List<List<CarsSet>> parts = emptyParts(shardCount);
+        config.loader().load(json, batch -> {
+            for (CarsSet car : batch) {
+                parts.get(partitioning.shardOf(car, shardCount)).add(car);
+            }
+        });
+        return new ShardedCarRepository(parts, partitioning, config);
+    }
+
+    /**
+     * Returns the shards.
+     *
+     * @return a read-only List of the shards, in shard order
+     */
+    public List<CarSetRepository> getShards() {
+        return shards;
+    }
+
+    /**
+     * Inserts a car into its shard, or replaces the car with the same code.
+     *
+     * @param car the car to store
+     * @return the replaced car, or an empty Optional if the code was new
+     */
+    public Optional<CarsSet> put(@NonNull final CarsSet car) {
+        int target = partitioning.shardOf(car, shards.size());
+        Optional<CarsSet> before = Optional.empty();
+        if (partitioning == Partitioning.CAR_TYPE && shards.get(target).findByCode(car.getCode()).isEmpty()) {
+            // A car whose type changed sits in the shard of its previous type; take it out before inserting it.
+            // Lookups are lock-free, so only the shard actually holding the car commits a removal
+            for (int shard = 0; shard < shards.size(); shard++) {
+                if (shard != target && shards.get(shard).findByCode(car.getCode()).isPresent()) {
+                    before = shards.get(shard).remove(car.getCode());
+                    break;
+                }
+            }
+        }
+        Optional<CarsSet> replaced = shards.get(target).put(car);
+        return before.isPresent() ? before : replaced;
+    }
+
+    /**
+     * Removes the car with the given code.
+     *
+     * @param code the code of the car to remove
+     * @return the removed car, or an empty Optional if there was none
+     */
+    public Optional<CarsSet> remove(@NonNull final String code) {
+        if (partitioning == Partitioning.CODE_HASH) {
+            return shards.get(Partitioning.hash(code, shards.size())).remove(code);
+        }
+        for (CarSetRepository shard : shards) {
+            Optional<CarsSet> removed = shard.remove(code);
+            if (removed.isPresent()) {
+                return removed;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Looks up a car by its code.
+     *
+     * @param code the code to look up
+     * @return the car with the given code, or an empty Optional if there is none
+     */
+    public Optional<CarsSet> findByCode(@NonNull final String code) {
+        if (partitioning == Partitioning.CODE_HASH) {
+            return shards.get(Partitioning.hash(code, shards.size())).findByCode(code);
+        }
+        for (CarSetRepository shard : shards) {
+            Optional<CarsSet> car = shard.findByCode(code);
+            if (car.isPresent()) {
+                return car;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the number of cars.
+     *
+     * @return the sum of the sizes of the shards
+     */
+    public int size() {
+        int size = 0;
+        for (CarSetRepository shard : shards) {
+            size += shard.getAll().size();
+        }
+        return size;
+    }
+
+    @Override
+    public long getHighestPrice() {
+        OptionalLong highest = OptionalLong.empty();
+        for (OptionalLong part : scatter(CarSetRepository::findHighestPrice)) {
+            if (part.isPresent() && (highest.isEmpty() || part.getAsLong() > highest.getAsLong())) {
+                highest = part;
+            }
+        }
+        return highest.orElseThrow(Queries::noHighestPrice);
+    }
+
+    @Override
+    public Set<String> getCarsName() {
+        Set<String> names = new HashSet<>();
+        for (Set<String> part : scatter(CarSetRepository::getCarsName)) {
+            names.addAll(part);
+        }
+        return names;
+    }
+
+    @Override
+    public List<CarsSet> getCarsOrderByPriceDesc() {
+        return merge(scatter(CarSetRepository::getCarsOrderByPriceDesc), Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Retrieves the most expensive cars.
+     *
+     * @param k the number of cars to retrieve
+     * @return at most k cars sorted by price in descending order
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<CarsSet> topByPrice(final int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        return merge(scatter(shard -> shard.topByPrice(k)), k, true);
+    }
+
+    /**
+     * Retrieves the cars whose price lies within a closed range.
+     *
+     * @param min the lowest price to include
+     * @param max the highest price to include
+     * @return a List of the matching cars sorted by price in ascending order
+     */
+    public List<CarsSet> findByPriceBetween(final int min, final int max) {
+        return merge(scatter(shard -> shard.findByPriceBetween(min, max)), Integer.MAX_VALUE, false);
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Long> getCountOfCarsByCarType() {
+        Map<CarsSet.CarType, Long> counts = new EnumMap<>(CarsSet.CarType.class);
+        for (Map<CarsSet.CarType, Long> part : scatter(CarSetRepository::getCountOfCarsByCarType)) {
+            part.forEach((carType, count) -> counts.merge(carType, count, Long::sum));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Set<CarsSet>> getCarsByCarTypes() {
+        List<Map<CarsSet.CarType, Set<CarsSet>>> parts = scatter(CarSetRepository::getCarsByCarTypes);
+        Map<CarsSet.CarType, Set<CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            result.put(carType, combine(parts, carType, Set::isEmpty, HashSet::new, Set::addAll,
+                    Collections::unmodifiableSet, Set.of()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Map<CarsSet.CarType, Map<String, CarsSet>> getCarsByCarTypeAndCodes() {
+        List<Map<CarsSet.CarType, Map<String, CarsSet>>> parts = scatter(CarSetRepository::getCarsByCarTypeAndCodes);
+        Map<CarsSet.CarType, Map<String, CarsSet>> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            Map<String, CarsSet> cars = combine(parts, carType, Map::isEmpty, TreeMap::new, Map::putAll,
+                    Collections::unmodifiableMap, null);
+            if (cars != null) {
+                result.put(carType, cars);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Stops the shard threads.
+     */
+    @Override
+    public void close() {
+        threads.forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * Combines one group of the grouped results of the shards.
+     * A group held by a single shard is wrapped as it is, several are copied into a new container and wrapped,
+     * so the result is unmodifiable either way.
+     */
+    private static <C> C combine(
+            final List<? extends Map<CarsSet.CarType, C>> parts,
+            final CarsSet.CarType carType,
+            final Predicate<C> isEmpty,
+            final Supplier<C> create,
+            final BiConsumer<C, C> addAll,
+            final UnaryOperator<C> unmodifiable,
+            final C empty) {
+        C single = null;
+        C combined = null;
+        for (Map<CarsSet.CarType, C> part : parts) {
+            C group = part.get(carType);
+            if (group == null || isEmpty.test(group)) {
+                continue;
+            }
+            if (single == null) {
+                single = group;
+            } else {
+                if (combined == null) {
+                    combined = create.get();
+                    addAll.accept(combined, single);
+                }
+                addAll.accept(combined, group);
+            }
+        }
+        if (combined != null) {
+            return unmodifiable.apply(combined);
+        }
+        return single != null ? unmodifiable.apply(single) : empty;
+    }
+
+    /**
+     * Merges lists sorted by price into one sorted list.
+     *
+     * @param parts the sorted lists, one per shard
+     * @param limit the highest number of cars to take
+     * @param descending whether the lists are sorted by price in descending order
+     * @return the merged list; between equal prices, cars of a lower shard come first
+     */
+    private static List<CarsSet> merge(final List<List<CarsSet>> parts, final int limit, final boolean descending) {
+        int total = 0;
+        for (List<CarsSet> part : parts) {
+            total += part.size();
+        }
+        List<CarsSet> merged = new ArrayList<>(Math.min(total, limit));
+
+        // Each heap entry is the position of the next car of one shard; ties go to the lower shard
+        int[] next = new int[parts.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> {
+            int byPrice = Integer.compare(parts.get(a).get(next[a]).getPrice(), parts.get(b).get(next[b]).getPrice());
+            return byPrice != 0 ? (descending ? -byPrice : byPrice) : Integer.compare(a, b);
+        });
+        for (int shard = 0; shard < parts.size(); shard++) {
+            if (!parts.get(shard).isEmpty()) {
+                heads.add(shard);
+            }
+        }
+        while (!heads.isEmpty() && merged.size() < limit) {
+            int shard = heads.poll();
+            merged.add(parts.get(shard).get(next[shard]++));
+            if (next[shard] < parts.get(shard).size()) {
+                heads.add(shard);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Runs a query on every shard, each on its own thread, and waits for all the parts.
+     *
+     * @param query the query to run against one shard
+     * @param <T> the type of the parts
+     * @return the parts, in shard order
+     */
+    private <T> List<T> scatter(final Function<CarSetRepository, T> query) {
+        return gather(shards.size(), shard -> query.apply(shards.get(shard)));
+    }
+
+    /**
+     * Runs a task for every shard on the thread of that shard, and waits for all the results.
+     *
+     * @param count the number of shards
+     * @param task the task, given the shard index
+     * @param <T> the type of the results
+     * @return the results, in shard order
+     */
+    private <T> List<T> gather(final int count, final IntFunction<T> task) {
+        List<Future<T>> futures = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            final int index = shard;
+            futures.add(threads.get(shard).submit(() -> task.apply(index)));
+        }
+        List<T> parts = new ArrayList<>(count);
+        for (Future<T> future : futures) {
+            try {
+                parts.add(future.get());
+            } catch (ExecutionException e) {
+                // Rethrow what the shard threw, as if the query had run on the caller's thread
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the shards", e);
+            }
+        }
+        return parts;
+    }
+
+    private static List<List<CarsSet>> partition(
+            final Collection<CarsSet> cars,
+            final int shardCount,
+            final Partitioning partitioning) {
+        List<List<CarsSet>> parts = emptyParts(shardCount);
+        for (CarsSet car : cars) {
+            parts.get(partitioning.shardOf(car, shardCount)).add(car);
+        }
+        return parts;
+    }
+
+    private static List<List<CarsSet>> emptyParts(final int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        List<List<CarsSet>> parts = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            parts.add(new ArrayList<>());
+        }
+        return parts;
+    }
+
+    /**
+     * The Partitioning enum lists the ways cars can be assigned to shards.
+     */
+    public enum Partitioning {
+        /**
+         * Cars of the same type share a shard, so each group of the grouped queries is computed by one shard.
+         * There are at most as many busy shards as car types.
+         */
+        CAR_TYPE,
+
+        /**
+         * Cars are spread evenly by a hash of their code, so lookups by code go to a single shard.
+         */
+        CODE_HASH;
+
+        private int shardOf(final CarsSet car, final int shardCount) {
+            if (this == CAR_TYPE) {
+                return car.getCartype() == null ? 0 : car.getCartype().ordinal() % shardCount;
+            }
+            return hash(car.getCode(), shardCount);
+        }
+
+        private static int hash(final String code, final int shardCount) {
+            // Spread the bits of String.hashCode, whose low bits are weak for short numeric codes
+            int h = code == null ? 0 : code.hashCode() * 0x9E3779B9;
+            return Math.floorMod(h ^ (h >>> 16), shardCount);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package cars;
+
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The SpecAnalytics class summarizes the {@link CarsSet.Specifications} of one snapshot of a repository:
+ * the minimum, maximum, mean and percentiles of the power, the weight and the power-to-weight ratio,
+ * overall, per car type or per manufacturer. The manufacturer of a specification is its name.
+ *
+ * <p>The specifications are flattened once per snapshot into primitive columns, and every summary then runs
+ * over those columns. The loops use the {@code jdk.incubator.vector} Vector API when the project is built with the
+ * {@code vector} profile and the JVM runs with {@code --add-modules jdk.incubator.vector}, and equivalent scalar code
+ * otherwise; see {@link #isVectorized()}.
+ *
+ * <p>Percentiles use the nearest-rank method. Power-to-weight ratios are in horsepower per tonne;
+ * a zero weight yields an infinite ratio.
+ */
+public final class SpecAnalytics {
+    private static final CarsSet.CarType[] CAR_TYPES = CarsSet.CarType.values();
+    private static final SpecKernels KERNELS = SpecKernels.select();
+    // Integer percentiles are counted in a histogram when the values span at most this many integers
+    private static final int HISTOGRAM_RANGE = 1 << 16;
+
+    private final SpecTable table;
+    private final SpecKernels kernels;
+
+    SpecAnalytics(final SpecTable table) {
+        this(table, KERNELS);
+    }
+
+    SpecAnalytics(final SpecTable table, final SpecKernels kernels) {
+        this.table = table;
+        this.kernels = kernels;
+    }
+
+    /**
+     * Tells whether the summaries run on the Vector API in this JVM.
+     *
+     * @return true if they do, false if they run on the scalar fallback
+     */
+    public static boolean isVectorized() {
+        return KERNELS.isVectorized();
+    }
+
+    /**
+     * Summarizes every specification.
+     *
+     * @return the summary, whose values are NaN if there are no specifications
+     */
+    public SpecStats overall() {
+        double[] ratio = new double[table.size];
+        kernels.powerToWeight(table.power, table.weight, table.size, ratio);
+        // The columns of the table are shared, so the percentiles reorder copies
+        return stats(table.power.clone(), table.weight.clone(), ratio, 0, table.size);
+    }
+
+    /**
+     * Summarizes the specifications per car type.
+     *
+     * @return a map of each car type having specifications to its summary
+     */
+    public Map<CarsSet.CarType, SpecStats> byCarType() {
+        SpecStats[] groups = group(table.carType, CAR_TYPES.length);
+        Map<CarsSet.CarType, SpecStats> result = new EnumMap<>(CarsSet.CarType.class);
+        for (CarsSet.CarType carType : CAR_TYPES) {
+            if (groups[carType.ordinal()] != null) {
+                result.put(carType, groups[carType.ordinal()]);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Summarizes the specifications per manufacturer.
+     *
+     * @return a map of each manufacturer, in alphabetical order with {@code null} first, to its summary
+     */
+    public Map<String, SpecStats> byManufacturer() {
+        SpecStats[] groups = group(table.maker, table.makers.length);
+        Map<String, SpecStats> result = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        for (int maker = 0; maker < groups.length; maker++) {
+            result.put(table.makers[maker], groups[maker]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private SpecStats[] group(final byte[] keys, final int groups) {
+        int[] wide = new int[table.size];
+        for (int i = 0; i < wide.length; i++) {
+            wide[i] = keys[i];
+        }
+        return group(wide, groups);
+    }
+
+    /**
+     * Summarizes the rows of each group.
+     *
+     * @param keys the group of every row, negative for rows outside every group
+     * @param groups the number of groups
+     * @return the summary of each group, {@code null} for empty groups
+     */
+    private SpecStats[] group(final int[] keys, final int groups) {
+        // Counting sort the rows by group, so each group is a contiguous range of the gathered columns
+        int[] start = new int[groups + 1];
+        for (int i = 0; i < table.size; i++) {
+            if (keys[i] >= 0) {
+                start[keys[i] + 1]++;
+            }
+        }
+        for (int g = 0; g < groups; g++) {
+            start[g + 1] += start[g];
+        }
+        int[] fill = Arrays.copyOf(start, groups);
+        int[] power = new int[start[groups]];
+        int[] weight = new int[start[groups]];
+        for (int i = 0; i < table.size; i++) {
+            if (keys[i] >= 0) {
+                int at = fill[keys[i]]++;
+                power[at] = table.power[i];
+                weight[at] = table.weight[i];
+            }
+        }
+
+        double[] ratio = new double[power.length];
+        kernels.powerToWeight(power, weight, power.length, ratio);
+        SpecStats[] result = new SpecStats[groups];
+        for (int g = 0; g < groups; g++) {
+            if (start[g] < start[g + 1]) {
+                result[g] = stats(power, weight, ratio, start[g], start[g + 1]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Summarizes a range of rows, reordering that range of the columns in place.
+     */
+    private SpecStats stats(final int[] power, final int[] weight, final double[] ratio, final int from, final int to) {
+        return new SpecStats(to - from, summary(power, from, to), summary(weight, from, to), summary(ratio, from, to));
+    }
+
+    private Summary summary(final int[] values, final int from, final int to) {
+        if (from == to) {
+            return Summary.EMPTY;
+        }
+        long[] totals = new long[3];
+        kernels.summarize(values, from, to, totals);
+        int min = (int) totals[0];
+        int max = (int) totals[1];
+        double mean = totals[2] / (double) (to - from);
+
+        int[] percentiles;
+        if ((long) max - min < HISTOGRAM_RANGE) {
+            // Count the occurrences of each value and walk the counts up to each rank
+            int[] counts = new int[max - min + 1];
+            for (int i = from; i < to; i++) {
+                counts[values[i] - min]++;
+            }
+            long[] ranks = {rank(50, to - from), rank(90, to - from), rank(99, to - from)};
+            percentiles = new int[ranks.length];
+            long seen = 0;
+            int next = 0;
+            for (int v = 0; v < counts.length && next < ranks.length; v++) {
+                seen += counts[v];
+                while (next < ranks.length && seen >= ranks[next]) {
+                    percentiles[next++] = v + min;
+                }
+            }
+        } else {
+            Arrays.sort(values, from, to);
+            percentiles = new int[]{
+                    values[from + rank(50, to - from) - 1],
+                    values[from + rank(90, to - from) - 1],
+                    values[from + rank(99, to - from) - 1]};
+        }
+        return new Summary(min, max, mean, percentiles[0], percentiles[1], percentiles[2]);
+    }
+
+    private Summary summary(final double[] values, final int from, final int to) {
+        if (from == to) {
+            return Summary.EMPTY;
+        }
+        double[] totals = new double[3];
+        kernels.summarize(values, from, to, totals);
+        int[] at = {from + rank(50, to - from) - 1, from + rank(90, to - from) - 1, from + rank(99, to - from) - 1};
+        if (Double.isNaN(totals[0])) {
+            // NaN ratios, from zero power over zero weight, only have a place in the total order of a sort
+            Arrays.sort(values, from, to);
+        } else {
+            // Each selection leaves larger values after its position, where the next one searches
+            select(values, from, to, at[0]);
+            select(values, at[0], to, at[1]);
+            select(values, at[1], to, at[2]);
+        }
+        return new Summary(totals[0], totals[1], totals[2] / (to - from), values[at[0]], values[at[1]], values[at[2]]);
+    }
+
+    /**
+     * Partially sorts a range so that position k holds the value it would hold in the sorted range,
+     * with no larger value before it and no smaller value after it. The range holds no NaN.
+     */
+    private static void select(final double[] values, final int from, final int to, final int k) {
+        int low = from;
+        int high = to - 1;
+        while (low < high) {
+            double a = values[low];
+            double b = values[(low + high) >>> 1];
+            double c = values[high];
+            double pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double swap = values[i];
+                    values[i++] = values[j];
+                    values[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the nearest rank of a percentile, between 1 and the number of values.
+     */
+    private static int rank(final int percentile, final int count) {
+        return Math.max(1, (int) Math.ceil(percentile / 100.0 * count));
+    }
+
+    /**
+     * The summaries of a group of specifications.
+     */
+    @Value
+    public static class SpecStats {
+        /**
+         * The number of specifications.
+         */
+        long count;
+
+        /**
+         * The power, in horsepower.
+         */
+        Summary power;
+
+        /**
+         * The weight, in kilograms.
+         */
+        Summary weight;
+
+        /**
+         * The power-to-weight ratio, in horsepower per tonne.
+         */
+        Summary powerToWeight;
+    }
+
+    /**
+     * The distribution of one measure over a group of specifications.
+     */
+    @Value
+    public static class Summary {
+        static final Summary EMPTY = new Summary(Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+
+        double min;
+        double max;
+        double mean;
+        double p50;
+        double p90;
+        double p99;
+    }
+}
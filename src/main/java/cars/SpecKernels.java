@@ -0,0 +1,118 @@
+package cars;
+
+/**
+ * The loops of {@link SpecAnalytics} over primitive columns, implemented once with plain scalar code
+ * and once with the Vector API.
+ */
+interface SpecKernels {
+
+    /**
+     * Computes the minimum, the maximum and the sum of a range of values.
+     *
+     * @param values the column
+     * @param from the first position of the range
+     * @param to the position after the range, greater than {@code from}
+     * @param result receives the minimum, the maximum and the sum, in that order
+     */
+    void summarize(int[] values, int from, int to, long[] result);
+
+    /**
+     * Computes the minimum, the maximum and the sum of a range of values.
+     *
+     * @param values the column
+     * @param from the first position of the range
+     * @param to the position after the range, greater than {@code from}
+     * @param result receives the minimum, the maximum and the sum, in that order
+     */
+    void summarize(double[] values, int from, int to, double[] result);
+
+    /**
+     * Computes the power-to-weight ratio of every row, in horsepower per tonne.
+     *
+     * @param power the power column
+     * @param weight the weight column
+     * @param size the number of rows
+     * @param result receives the ratios
+     */
+    void powerToWeight(int[] power, int[] weight, int size, double[] result);
+
+    /**
+     * Tells whether this implementation runs on the Vector API.
+     *
+     * @return true if it does
+     */
+    boolean isVectorized();
+
+    /**
+     * Returns the fastest implementation available in this JVM.
+     *
+     * @return the vector kernels if they were built and the Vector API module is resolved, the scalar ones otherwise
+     */
+    static SpecKernels select() {
+        // The Vector API is an incubator module, resolved only when the JVM runs with --add-modules jdk.incubator.vector
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Looked up by name, since only the vector and benchmarks profiles compile the class
+                return Class.forName("cars.VectorSpecKernels")
+                        .asSubclass(SpecKernels.class)
+                        .getDeclaredConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to the scalar loops below
+            }
+        }
+        return Scalar.INSTANCE;
+    }
+
+    /**
+     * The plain loops, which the JIT may still auto-vectorize.
+     */
+    final class Scalar implements SpecKernels {
+        static final Scalar INSTANCE = new Scalar();
+
+        private Scalar() {
+        }
+
+        @Override
+        public void summarize(final int[] values, final int from, final int to, final long[] result) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+                sum += values[i];
+            }
+            result[0] = min;
+            result[1] = max;
+            result[2] = sum;
+        }
+
+        @Override
+        public void summarize(final double[] values, final int from, final int to, final double[] result) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+                sum += values[i];
+            }
+            result[0] = min;
+            result[1] = max;
+            result[2] = sum;
+        }
+
+        @Override
+        public void powerToWeight(final int[] power, final int[] weight, final int size, final double[] result) {
+            for (int i = 0; i < size; i++) {
+                result[i] = power[i] * 1000.0 / weight[i];
+            }
+        }
+
+        @Override
+        public boolean isVectorized() {
+            return false;
+        }
+    }
+}
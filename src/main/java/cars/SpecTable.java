@@ -0,0 +1,120 @@
+package cars;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * The SpecTable class flattens the specifications of a catalog into primitive columns for {@link SpecAnalytics}.
+ * Row i of the table is one specification: its power, its weight, the car type of its car
+ * and the dense id of its manufacturer, which is the specification name.
+ */
+final class SpecTable {
+    final int size;
+    final int[] power;
+    final int[] weight;
+    final byte[] carType;
+    final int[] maker;
+    final String[] makers;
+
+    private SpecTable(final Builder builder) {
+        this.size = builder.size;
+        this.power = Arrays.copyOf(builder.power, builder.size);
+        this.weight = Arrays.copyOf(builder.weight, builder.size);
+        this.carType = Arrays.copyOf(builder.carType, builder.size);
+        this.maker = Arrays.copyOf(builder.maker, builder.size);
+        this.makers = builder.makers.toArray(new String[0]);
+    }
+
+    /**
+     * Flattens the specifications of CarsSet instances.
+     *
+     * @param cars the cars
+     * @return the table
+     */
+    static SpecTable of(final List<CarsSet> cars) {
+        Builder table = new Builder(cars.size());
+        for (CarsSet car : cars) {
+            if (car.getSpecifications() == null) {
+                continue;
+            }
+            for (CarsSet.Specifications spec : car.getSpecifications()) {
+                table.add(spec.getPower_hp(), spec.getWeight_in_kg(), car.getCartype(), spec.getName());
+            }
+        }
+        return table.build();
+    }
+
+    /**
+     * Collects the rows of a table. Manufacturers are given either as strings or as ids of a dictionary,
+     * which are translated into dense ids without decoding each occurrence.
+     */
+    static final class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> makers = new ArrayList<>();
+        private int[] dictionaryIds = new int[0];
+        private int size;
+        private int[] power;
+        private int[] weight;
+        private byte[] carType;
+        private int[] maker;
+
+        Builder(final int capacity) {
+            int initial = Math.max(16, capacity);
+            this.power = new int[initial];
+            this.weight = new int[initial];
+            this.carType = new byte[initial];
+            this.maker = new int[initial];
+        }
+
+        void add(final int power, final int weight, final CarsSet.CarType carType, final String maker) {
+            append(power, weight, carType, ids.computeIfAbsent(maker, name -> {
+                makers.add(name);
+                return makers.size() - 1;
+            }));
+        }
+
+        void add(
+                final int power,
+                final int weight,
+                final CarsSet.CarType carType,
+                final int dictionaryId,
+                final IntFunction<String> dictionary) {
+            // Dictionary ids are remembered by position, offset by one so that the null id maps to slot zero
+            int slot = dictionaryId + 1;
+            if (slot >= dictionaryIds.length) {
+                dictionaryIds = Arrays.copyOf(dictionaryIds, Math.max(slot + 1, dictionaryIds.length * 2));
+            }
+            if (dictionaryIds[slot] == 0) {
+                String name = dictionary.apply(dictionaryId);
+                add(power, weight, carType, name);
+                dictionaryIds[slot] = maker[size - 1] + 1;
+                return;
+            }
+            append(power, weight, carType, dictionaryIds[slot] - 1);
+        }
+
+        private void append(final int power, final int weight, final CarsSet.CarType carType, final int maker) {
+            if (size == this.power.length) {
+                int capacity = size * 2;
+                this.power = Arrays.copyOf(this.power, capacity);
+                this.weight = Arrays.copyOf(this.weight, capacity);
+                this.carType = Arrays.copyOf(this.carType, capacity);
+                this.maker = Arrays.copyOf(this.maker, capacity);
+            }
+            this.power[size] = power;
+            this.weight[size] = weight;
+            // Specifications of cars without a car type are only counted in the totals
+            this.carType[size] = (byte) (carType == null ? -1 : carType.ordinal());
+            this.maker[size] = maker;
+            size++;
+        }
+
+        SpecTable build() {
+            return new SpecTable(this);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package cars;
+
+import base.Queries;
+import base.Snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The StressQueries class exercises a CarSetRepository with many reader threads while a writer keeps updating prices.
+ * It shows that readers, which run lock-free against snapshots, scale with the number of cores during writes,
+ * and that every snapshot they see is consistent.
+ *
+ * <p>For every reader count from one up to the number of available processors (doubling each round) it:
+ * <ul>
+ *     <li>Starts a writer thread that commits batches of price updates, pausing between commits.</li>
+ *     <li>Starts the readers, each pinning a snapshot and running point lookups, the aggregate queries and the
+ *         full ordered and grouped queries against it in a loop.</li>
+ *     <li>Checks on every snapshot that the results agree with each other and with its size,
+ *         and fails the run on the first violation.</li>
+ *     <li>Displays the read throughput, the speedup over a single reader and the number of committed writes.</li>
+ * </ul>
+ */
+public class StressQueries {
+    private static final int DEFAULT_CARS = 100_000;
+    private static final int DEFAULT_SECONDS = 3;
+    // A commit every 10 ms; back-to-back commits would have the readers measure index rebuilds rather than queries
+    private static final long DEFAULT_PAUSE_MILLIS = 10;
+    private static final int WRITE_BATCH = 100;
+    private static final int LOOKUPS = 64;
+
+    /**
+     * Runs the stress test and displays one line per reader count.
+     *
+     * @param args optionally the number of cars, the number of seconds per round, the highest reader count
+     *             and the pause of the writer between commits in milliseconds, 10 by default
+     * @throws InterruptedException if the main thread is interrupted while waiting for a round
+     * @throws IllegalStateException if a reader saw an inconsistent snapshot or the writer failed
+     */
+    public static void main(String[] args) throws InterruptedException {
+        final int carCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CARS;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        final int maxReaders = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        final long pauseMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_PAUSE_MILLIS;
+        final var repo = new CarSetRepository(new CarsSetGenerator(42).generate(carCount), RepositoryConfig.DEFAULT);
+
+        // Warm up the JIT so the first measured round is not penalized
+        round(repo, 1, 1, pauseMillis);
+
+        System.out.println("cars=" + carCount + " seconds=" + seconds + " pause=" + pauseMillis + "ms");
+        System.out.println("readers\treads/s\tspeedup\twrites");
+        double single = 0;
+        for (int readers = 1; readers <= maxReaders; readers *= 2) {
+            long[] result = round(repo, readers, seconds, pauseMillis);
+            double throughput = result[0] / (double) seconds;
+            if (readers == 1) {
+                single = throughput;
+            }
+            System.out.printf("%d\t%.0f\t%.2f\t%d%n", readers, throughput, throughput / single, result[1]);
+        }
+    }
+
+    /**
+     * Runs one round of concurrent reads and writes.
+     *
+     * @param repo the repository under test
+     * @param readers the number of reader threads
+     * @param seconds the duration of the round
+     * @param pauseMillis the pause of the writer between commits
+     * @return the number of completed reads and the number of committed writes
+     * @throws InterruptedException if the main thread is interrupted while waiting
+     * @throws IllegalStateException if a reader saw an inconsistent snapshot or the writer failed
+     */
+    private static long[] round(CarSetRepository repo, int readers, int seconds, long pauseMillis)
+            throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final LongAdder reads = new LongAdder();
+        final LongAdder writes = new LongAdder();
+        final CountDownLatch done = new CountDownLatch(readers + 1);
+        final List<String> codes = new ArrayList<>(repo.getAll().size());
+        for (CarsSet car : repo.getAll()) {
+            codes.add(car.getCode());
+        }
+
+        // The writer only changes prices, so every code stays present while the price order moves
+        Thread writer = new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(1);
+            try {
+                while (running.get()) {
+                    repo.apply(batch -> {
+                        for (int i = 0; i < WRITE_BATCH; i++) {
+                            int price = 10_000 + random.nextInt(990_000);
+                            batch.update(codes.get(random.nextInt(codes.size())),
+                                    car -> car.toBuilder().price(price).build());
+                        }
+                    });
+                    writes.increment();
+                    if (pauseMillis > 0) {
+                        sleep(pauseMillis);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+                running.set(false);
+            } finally {
+                done.countDown();
+            }
+        });
+
+        // Every reader pins a snapshot and checks the results of all its queries against each other
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            final int seed = r;
+            threads.add(new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                long local = 0;
+                try {
+                    while (running.get()) {
+                        Snapshot<CarsSet> snapshot = repo.snapshot();
+                        for (int i = 0; i < LOOKUPS; i++) {
+                            String code = codes.get(random.nextInt(codes.size()));
+                            check(repo.find(snapshot, code).isPresent(), snapshot, "car " + code + " is missing");
+                        }
+                        verify(repo.at(snapshot), snapshot);
+                        local += LOOKUPS + 4;
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                    running.set(false);
+                }
+                reads.add(local);
+                done.countDown();
+            }));
+        }
+
+        writer.start();
+        threads.forEach(Thread::start);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (running.get() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        running.set(false);
+        done.await();
+        if (failure.get() != null) {
+            throw new IllegalStateException("The round failed: " + failure.get().getMessage(), failure.get());
+        }
+        return new long[]{reads.sum(), writes.sum()};
+    }
+
+    /**
+     * Runs the aggregate, ordered and grouped queries against one snapshot and checks that they agree.
+     *
+     * @param view the queries bound to the snapshot
+     * @param snapshot the snapshot
+     * @throws IllegalStateException if the results disagree
+     */
+    private static void verify(
+            Queries<CarsSet, CarsSet.Specifications, CarsSet.CarType> view,
+            Snapshot<CarsSet> snapshot) {
+        int size = snapshot.getEntities().size();
+
+        Map<CarsSet.CarType, Long> counts = view.getCountOfCarsByCarType();
+        long counted = counts.values().stream().mapToLong(Long::longValue).sum();
+        check(counted == size, snapshot, "the counts by car type add up to " + counted + " instead of " + size);
+
+        List<CarsSet> ordered = view.getCarsOrderByPriceDesc();
+        check(ordered.size() == size, snapshot, "the price order holds " + ordered.size() + " cars instead of " + size);
+        for (int i = 1; i < ordered.size(); i++) {
+            check(ordered.get(i - 1).getPrice() >= ordered.get(i).getPrice(), snapshot,
+                    "the price order is broken at position " + i);
+        }
+        check(size == 0 || ordered.get(0).getPrice() == view.getHighestPrice(), snapshot,
+                "the highest price differs from the first car of the price order");
+
+        Map<CarsSet.CarType, Set<CarsSet>> groups = view.getCarsByCarTypes();
+        for (Map.Entry<CarsSet.CarType, Set<CarsSet>> group : groups.entrySet()) {
+            long expected = counts.getOrDefault(group.getKey(), 0L);
+            check(group.getValue().size() == expected, snapshot,
+                    group.getKey() + " holds " + group.getValue().size() + " cars but counts " + expected);
+        }
+    }
+
+    private static void check(boolean condition, Snapshot<CarsSet> snapshot, String message) {
+        if (!condition) {
+            throw new IllegalStateException("Version " + snapshot.getVersion() + ": " + message);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
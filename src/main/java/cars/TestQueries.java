@@ -10,6 +10,7 @@ import java.io.IOException;
  * <ul>
  *     <li>Instantiates a CarSetRepository to perform querying operations.</li>
  *     <li>Displays the repository object.</li>
+ *     <li>Computes every query in a single pass over the repository, as a report does.</li>
  *     <li>Retrieves and displays the highest price among the stored car sets.</li>
  *     <li>Displays the unique names of cars stored in the repository.</li>
  *     <li>Displays a list of cars sorted in descending order based on their prices.</li>
@@ -31,28 +32,31 @@ public class TestQueries {
         System.out.println(repo);
         System.out.println("---------------");
 
+        // Computing all the queries below with one scan of the cars instead of one scan per query
+        final var results = repo.batch();
+
         // Retrieving and displaying the highest price among the stored car sets
-        System.out.println(repo.getHighestPrice());
+        System.out.println(results.getHighestPrice());
         System.out.println("---------------");
 
         // Displaying the unique names of cars stored in the repository
-        System.out.println(repo.getCarsName());
+        System.out.println(results.getCarsName());
         System.out.println("---------------");
 
         // Displaying a list of cars sorted in descending order based on their prices
-        System.out.println(repo.getCarsOrderByPriceDesc());
+        System.out.println(results.getCarsOrderByPriceDesc());
         System.out.println("---------------");
 
         // Displaying a grouping of cars based on their car types
-        System.out.println(repo.getCarsByCarTypes());
+        System.out.println(results.getCarsByCarTypes());
         System.out.println("---------------");
 
         // Displaying a hierarchical mapping of cars categorized by car types and unique codes
-        System.out.println(repo.getCarsByCarTypeAndCodes());
+        System.out.println(results.getCarsByCarTypeAndCodes());
         System.out.println("---------------");
 
         // Displaying a count of cars categorized by their car types
-        System.out.println(repo.getCountOfCarsByCarType());
+        System.out.println(results.getCountOfCarsByCarType());
 
     }
 }
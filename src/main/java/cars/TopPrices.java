@@ -0,0 +1,96 @@
+package cars;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The TopPrices class selects the most expensive rows with a bounded min-heap instead of a full sort.
+ * Rows are ranked by price in descending order and, between equal prices, by row number,
+ * which matches the order of {@link base.Queries#getCarsOrderByPriceDesc()}.
+ */
+final class TopPrices {
+
+    private TopPrices() {
+    }
+
+    /**
+     * Selects the k most expensive rows in O(n log k) time and O(k) space.
+     *
+     * @param size the number of rows
+     * @param priceOf the function returning the price of a row
+     * @param k the number of rows to select
+     * @return the selected row numbers, most expensive first
+     */
+    static int[] rows(final int size, final IntUnaryOperator priceOf, final int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        int capacity = Math.min(k, size);
+        long[] heap = new long[capacity];
+        int count = 0;
+        if (capacity == 0) {
+            return new int[0];
+        }
+
+        // The root of the heap is the cheapest of the rows selected so far
+        for (int row = 0; row < size; row++) {
+            long key = key(priceOf.applyAsInt(row), row);
+            if (count < capacity) {
+                heap[count] = key;
+                siftUp(heap, count++);
+            } else if (key > heap[0]) {
+                heap[0] = key;
+                siftDown(heap, capacity);
+            }
+        }
+
+        // Ascending keys put the cheapest first, so read them backwards
+        Arrays.sort(heap);
+        int[] rows = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            rows[i] = row(heap[capacity - 1 - i]);
+        }
+        return rows;
+    }
+
+    /**
+     * Packs a price and a row number into a key that is larger for higher prices and, on ties, for earlier rows.
+     */
+    private static long key(final int price, final int row) {
+        return ((long) price << 32) | (Integer.MAX_VALUE - row);
+    }
+
+    private static int row(final long key) {
+        return Integer.MAX_VALUE - (int) key;
+    }
+
+    private static void siftUp(final long[] heap, int index) {
+        long key = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+
+    private static void siftDown(final long[] heap, final int size) {
+        long key = heap[0];
+        int index = 0;
+        int child;
+        while ((child = 2 * index + 1) < size) {
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (key <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+}
@@ -0,0 +1,98 @@
+package cars;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link SpecKernels} on the Vector API, using the widest vectors the CPU supports.
+ * Each loop handles whole vectors and finishes the remaining rows with scalar code.
+ *
+ * <p>This class is only loaded once {@link SpecKernels#select()} has found the incubator module.
+ * Sums of doubles are accumulated per lane, so they may differ from the scalar ones in the last bits.
+ */
+final class VectorSpecKernels implements SpecKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Ints with as many lanes as DOUBLES, so they widen into one double vector
+    private static final VectorSpecies<Integer> NARROW_INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    @Override
+    public void summarize(final int[] values, final int from, final int to, final long[] result) {
+        IntVector min = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+        IntVector max = IntVector.broadcast(INTS, Integer.MIN_VALUE);
+        LongVector sum = LongVector.zero(LONGS);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector v = IntVector.fromArray(INTS, values, i);
+            min = min.min(v);
+            max = max.max(v);
+            // Widen both halves to longs so the sum cannot overflow
+            sum = sum.add(v.convertShape(VectorOperators.I2L, LONGS, 0))
+                    .add(v.convertShape(VectorOperators.I2L, LONGS, 1));
+        }
+
+        int scalarMin = min.reduceLanes(VectorOperators.MIN);
+        int scalarMax = max.reduceLanes(VectorOperators.MAX);
+        long scalarSum = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            scalarMin = Math.min(scalarMin, values[i]);
+            scalarMax = Math.max(scalarMax, values[i]);
+            scalarSum += values[i];
+        }
+        result[0] = scalarMin;
+        result[1] = scalarMax;
+        result[2] = scalarSum;
+    }
+
+    @Override
+    public void summarize(final double[] values, final int from, final int to, final double[] result) {
+        DoubleVector min = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+        DoubleVector max = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        int i = from;
+        for (int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+            DoubleVector v = DoubleVector.fromArray(DOUBLES, values, i);
+            min = min.min(v);
+            max = max.max(v);
+            sum = sum.add(v);
+        }
+
+        double scalarMin = min.reduceLanes(VectorOperators.MIN);
+        double scalarMax = max.reduceLanes(VectorOperators.MAX);
+        double scalarSum = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            scalarMin = Math.min(scalarMin, values[i]);
+            scalarMax = Math.max(scalarMax, values[i]);
+            scalarSum += values[i];
+        }
+        result[0] = scalarMin;
+        result[1] = scalarMax;
+        result[2] = scalarSum;
+    }
+
+    @Override
+    public void powerToWeight(final int[] power, final int[] weight, final int size, final double[] result) {
+        int i = 0;
+        for (int bound = NARROW_INTS.loopBound(size); i < bound; i += NARROW_INTS.length()) {
+            DoubleVector p = (DoubleVector) IntVector.fromArray(NARROW_INTS, power, i)
+                    .convertShape(VectorOperators.I2D, DOUBLES, 0);
+            DoubleVector w = (DoubleVector) IntVector.fromArray(NARROW_INTS, weight, i)
+                    .convertShape(VectorOperators.I2D, DOUBLES, 0);
+            p.mul(1000.0).div(w).intoArray(result, i);
+        }
+        for (; i < size; i++) {
+            result[i] = power[i] * 1000.0 / weight[i];
+        }
+    }
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+}